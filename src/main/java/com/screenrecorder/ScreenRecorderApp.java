@@ -1,10 +1,18 @@
 package com.screenrecorder;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.screenrecorder.model.RecordingConfig;
+import com.screenrecorder.model.RecordingResult;
+import com.screenrecorder.service.SessionRecovery;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 
@@ -27,6 +35,8 @@ public class ScreenRecorderApp extends Application {
         stage.setMinHeight(550);
         stage.show();
         
+        recoverInterruptedSessions();
+        
         // Ensure clean shutdown when window is closed
         stage.setOnCloseRequest(event -> {
             ScreenRecorderController controller = fxmlLoader.getController();
@@ -37,6 +47,33 @@ public class ScreenRecorderApp extends Application {
         });
     }
 
+    /**
+     * Finish recordings left behind by a crash or power loss, in the background, and tell the
+     * user what was recovered
+     */
+    private void recoverInterruptedSessions() {
+        Thread recoveryThread = new Thread(() -> {
+            List<RecordingResult> results = new SessionRecovery().recoverEverywhere(new RecordingConfig().getOutputDirectory());
+            if (results.isEmpty()) {
+                return;
+            }
+            String report = results.stream()
+                    .map(RecordingResult::getMessage)
+                    .collect(Collectors.joining("\n"));
+            Platform.runLater(() -> {
+                Alert alert = new Alert(results.stream().allMatch(RecordingResult::isSuccess)
+                        ? Alert.AlertType.INFORMATION
+                        : Alert.AlertType.WARNING);
+                alert.setTitle("Recovery");
+                alert.setHeaderText("Interrupted recordings were recovered");
+                alert.setContentText(report);
+                alert.show();
+            });
+        }, "session-recovery");
+        recoveryThread.setDaemon(true);
+        recoveryThread.start();
+    }
+
     public static void main(String[] args) {
         launch();
     }
@@ -8,6 +8,7 @@ import java.util.ResourceBundle;
 import com.screenrecorder.model.RecordingConfig;
 import com.screenrecorder.model.RecordingSource;
 import com.screenrecorder.model.Resolution;
+import com.screenrecorder.service.LivePreview;
 import com.screenrecorder.service.OBSPortableRecordingService;
 import com.screenrecorder.service.SystemDiscoveryService;
 
@@ -23,9 +24,8 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
-import javafx.scene.media.MediaPlayer;
-import javafx.scene.media.MediaView;
 import javafx.stage.DirectoryChooser;
 
 /**
@@ -48,7 +48,7 @@ public class ScreenRecorderController implements Initializable {
     @FXML private Label statusLabel;
     @FXML private ProgressBar timeProgressBar;
     @FXML private VBox previewContainer;
-    @FXML private MediaView previewMediaView;
+    @FXML private ImageView previewImageView;
     
     // Services
     private final OBSPortableRecordingService obsService;
@@ -56,7 +56,8 @@ public class ScreenRecorderController implements Initializable {
     private final RecordingConfig recordingConfig;
     
     // Preview
-    private MediaPlayer previewPlayer;
+    private LivePreview livePreview;
+    private Label previewPlaceholder;
     
     public ScreenRecorderController() {
         this.obsService = new OBSPortableRecordingService();
@@ -202,6 +203,7 @@ public class ScreenRecorderController implements Initializable {
                     showError("Failed to initialize OBS Studio. Please check the logs for details.");
                 } else {
                     obsService.statusProperty().set("OBS Studio ready for recording");
+                    obsService.startPreview(livePreview);
                 }
             });
         });
@@ -211,10 +213,20 @@ public class ScreenRecorderController implements Initializable {
      * Setup preview functionality
      */
     private void setupPreview() {
-        // For now, just add a placeholder
-        Label previewLabel = new Label("Live preview will appear here during recording");
-        previewLabel.setStyle("-fx-text-fill: gray; -fx-font-style: italic;");
-        previewContainer.getChildren().add(previewLabel);
+        previewPlaceholder = new Label("Live preview will appear here during recording");
+        previewPlaceholder.setStyle("-fx-text-fill: gray; -fx-font-style: italic;");
+        previewContainer.getChildren().add(previewPlaceholder);
+        
+        // Frames are pushed into the preview's buffers and shown on the next pulse. The UI records
+        // through OBS, so the OBS engine feeds it once OBS is ready (see checkOBSAvailability);
+        // FFmpegService's own preview path is not reachable from here.
+        Resolution resolution = recordingConfig.getResolution();
+        livePreview = LivePreview.forRecording(resolution.getWidth(), resolution.getHeight());
+        livePreview.attach(previewImageView);
+        previewImageView.setFitWidth(livePreview.getWidth());
+        previewImageView.setFitHeight(livePreview.getHeight());
+        previewPlaceholder.visibleProperty().bind(livePreview.showingProperty().not());
+        previewPlaceholder.managedProperty().bind(previewPlaceholder.visibleProperty());
     }
     
     // Event Handlers
@@ -292,8 +304,9 @@ public class ScreenRecorderController implements Initializable {
      * Shutdown services when application closes
      */
     public void shutdown() {
-        if (previewPlayer != null) {
-            previewPlayer.dispose();
+        if (livePreview != null) {
+            livePreview.detach();
+            System.out.println(livePreview.getStatistics());
         }
         obsService.shutdown();
         discoveryService.shutdown();
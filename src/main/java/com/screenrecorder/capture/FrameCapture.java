@@ -0,0 +1,263 @@
+package com.screenrecorder.capture;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Moves frames from a {@link FrameSource} through a {@link FrameRing} into FFmpeg's stdin.
+ *
+ * A capture thread paces the source to its frame rate and fills ring slots; an encoder thread
+ * writes each slot to the rawvideo pipe. Closing the pipe is how FFmpeg is told to finish the
+ * file, so 'q' must not be sent to a process fed by this class.
+ */
+public class FrameCapture {
+    private final FrameSource source;
+    private final FrameRing ring;
+    private final FrameDiffer differ;
+    private final long keepAliveNanos;
+    private volatile boolean running;
+    private volatile long capturedFrames;
+    private volatile long lateFrames;
+    private volatile long skippedFrames;
+    private volatile IOException failure;
+    private Thread captureThread;
+    private Thread encoderThread;
+
+    /**
+     * @param skipUnchangedFrames only pass frames that differ from the previous one
+     *                            (see {@link #inputArguments(FrameSource, boolean)})
+     */
+    public FrameCapture(FrameSource source, boolean skipUnchangedFrames) {
+        this(source, ApplicationProperties.getInt("capture.ring.size", 8),
+                FrameRing.DropPolicy.valueOf(ApplicationProperties.get("capture.ring.drop.policy", "DROP_NEWEST")),
+                skipUnchangedFrames ? new FrameDiffer(source.getWidth(), source.getHeight(),
+                        ApplicationProperties.getInt("capture.diff.tile.size", 32)) : null);
+    }
+
+    public FrameCapture(FrameSource source, int ringCapacity, FrameRing.DropPolicy dropPolicy, FrameDiffer differ) {
+        this.source = source;
+        this.ring = new FrameRing(ringCapacity, source.getFrameSize(), dropPolicy);
+        this.differ = differ;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(ApplicationProperties.getInt("capture.diff.keepalive.ms", 1000));
+    }
+
+    /**
+     * FFmpeg input options describing the frames written by this capture
+     *
+     * @param variableFrameRate when unchanged frames are skipped, FFmpeg must stamp each frame
+     *                          with its arrival time instead of counting frames
+     */
+    public static List<String> inputArguments(FrameSource source, boolean variableFrameRate) {
+        List<String> arguments = new ArrayList<>();
+        if (variableFrameRate) {
+            arguments.add("-use_wallclock_as_timestamps");
+            arguments.add("1");
+        }
+        arguments.addAll(List.of(
+                "-f", "rawvideo",
+                // The fourth byte is padding: sources need not fill in alpha
+                "-pix_fmt", "bgr0",
+                "-video_size", source.getWidth() + "x" + source.getHeight(),
+                "-framerate", String.valueOf(source.getFrameRate()),
+                "-i", "pipe:0"));
+        return arguments;
+    }
+
+    /**
+     * Open the source and start feeding the given FFmpeg stdin
+     */
+    public void start(OutputStream ffmpegInput) throws IOException {
+        source.open();
+        running = true;
+
+        WritableByteChannel channel = Channels.newChannel(ffmpegInput);
+        encoderThread = new Thread(() -> encodeLoop(channel), "frame-encoder");
+        encoderThread.setDaemon(true);
+        encoderThread.setPriority(Thread.MAX_PRIORITY);
+        encoderThread.start();
+
+        captureThread = new Thread(this::captureLoop, "frame-capture-" + source.getName());
+        captureThread.setDaemon(true);
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        captureThread.start();
+    }
+
+    /**
+     * Stop capturing, flush queued frames and close the pipe so FFmpeg finalizes its output
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (captureThread != null) {
+                captureThread.join(2000);
+            }
+            ring.close();
+            if (encoderThread != null) {
+                encoderThread.join(5000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void captureLoop() {
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, source.getFrameRate());
+        long nextFrame = System.nanoTime();
+        long lastPublished = 0;
+        ByteBuffer discard = null;
+        if (differ != null) {
+            differ.reset();
+        }
+        try {
+            while (running) {
+                if (!source.isSelfPaced()) {
+                    long wait = nextFrame - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    } else if (wait < -interval) {
+                        // Fell behind by a whole frame; skip ahead instead of bursting
+                        lateFrames++;
+                        nextFrame = System.nanoTime();
+                    }
+                    nextFrame += interval;
+                }
+
+                ByteBuffer slot = ring.claim();
+                if (slot == null) {
+                    if (ring.isClosed()) {
+                        break;
+                    }
+                    if (source.isSelfPaced()) {
+                        // The source only paces us while we read it: consume the dropped frame
+                        // instead of spinning on the full ring
+                        if (discard == null) {
+                            discard = ByteBuffer.allocateDirect(source.getFrameSize());
+                        }
+                        discard.clear();
+                        if (!source.readFrame(discard)) {
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                if (!source.readFrame(slot)) {
+                    break;
+                }
+                capturedFrames++;
+                if (differ != null && !differ.update(slot)
+                        && System.nanoTime() - lastPublished < keepAliveNanos) {
+                    // Nothing changed: leave the slot unpublished so the next claim reuses it.
+                    // A periodic frame is still sent so players and segmenters see progress.
+                    skippedFrames++;
+                    continue;
+                }
+                ring.publish();
+                lastPublished = System.nanoTime();
+            }
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Frame capture failed: " + e.getMessage());
+        } finally {
+            running = false;
+            source.close();
+            ring.close();
+        }
+    }
+
+    private void encodeLoop(WritableByteChannel channel) {
+        try (channel) {
+            while (true) {
+                ByteBuffer frame = ring.take(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    if (ring.isClosed() && ring.getDepth() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                try {
+                    while (frame.hasRemaining()) {
+                        channel.write(frame);
+                    }
+                } finally {
+                    ring.release();
+                }
+            }
+        } catch (IOException e) {
+            // FFmpeg exited; stop the producer too
+            if (running) {
+                failure = e;
+                System.err.println("Frame pipe closed: " + e.getMessage());
+            }
+            running = false;
+            ring.close();
+        }
+    }
+
+    public FrameSource getSource() {
+        return source;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The error that ended the capture early, or null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public long getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    /**
+     * Frames dropped because the encoder was behind and the ring was full
+     */
+    public long getDroppedFrames() {
+        return ring.getDroppedFrames();
+    }
+
+    /**
+     * Frame slots the capture thread missed because the source itself was too slow
+     */
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * Frames not sent to FFmpeg because nothing changed on screen
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * The tile differ when unchanged frames are skipped, else null
+     */
+    public FrameDiffer getDiffer() {
+        return differ;
+    }
+
+    public int getQueueDepth() {
+        return ring.getDepth();
+    }
+
+    public int getMaxQueueDepth() {
+        return ring.getMaxDepth();
+    }
+
+    public int getQueueCapacity() {
+        return ring.getCapacity();
+    }
+}
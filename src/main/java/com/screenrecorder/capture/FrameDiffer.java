@@ -0,0 +1,187 @@
+package com.screenrecorder.capture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Detects which tiles of a BGRA frame changed since the last changed frame.
+ *
+ * The incoming frame is compared in place against a reference buffer, one row at a time:
+ * a mismatch marks its tile dirty and the scan resumes at the next tile, so tiles already
+ * known to be dirty are not compared again. Only the tiles that changed are copied into the
+ * reference, so an unchanged frame costs one read of each buffer and no copy. The reference
+ * and the change map are allocated up front.
+ */
+public class FrameDiffer {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private final boolean[] changedTiles;
+    private final TileComparator comparator;
+    private final ByteBuffer reference;
+    private final ByteBuffer referenceView;
+
+    private boolean hasReference;
+    private int changedTileCount;
+    private long comparedFrames;
+    private long unchangedFrames;
+
+    public FrameDiffer(int width, int height, int tileSize) {
+        this(width, height, tileSize, TileComparator.best());
+    }
+
+    /**
+     * @param useBufferMismatch false forces the int-by-int comparison (for benchmarks)
+     */
+    public FrameDiffer(int width, int height, int tileSize, boolean useBufferMismatch) {
+        this(width, height, tileSize, useBufferMismatch ? TileComparator.best() : TileComparator.scalar());
+    }
+
+    private FrameDiffer(int width, int height, int tileSize, TileComparator comparator) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        this.tilesY = (height + tileSize - 1) / tileSize;
+        this.changedTiles = new boolean[tilesX * tilesY];
+        this.comparator = comparator;
+        this.reference = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        this.referenceView = reference.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Compare a frame against the last changed frame and update the change map.
+     * The first frame always counts as changed.
+     *
+     * @param frame BGRA pixels from position 0; its position is left unchanged
+     * @return true if any tile changed
+     */
+    public boolean update(ByteBuffer frame) {
+        int frameBytes = width * height * 4;
+        comparedFrames++;
+
+        if (!hasReference) {
+            hasReference = true;
+            Arrays.fill(changedTiles, true);
+            changedTileCount = changedTiles.length;
+            reference.put(0, frame, 0, frameBytes);
+            return true;
+        }
+
+        ByteBuffer current = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Arrays.fill(changedTiles, false);
+        int rowBytes = width * 4;
+        int changed = 0;
+        for (int y = 0; y < height; y++) {
+            int tileRowStart = (y / tileSize) * tilesX;
+            int rowStart = y * rowBytes;
+            int x = 0;
+            while (x < width) {
+                int tx = x / tileSize;
+                if (changedTiles[tileRowStart + tx]) {
+                    x = (tx + 1) * tileSize;
+                    continue;
+                }
+                int offset = comparator.mismatch(referenceView, current, rowStart + x * 4, rowStart + rowBytes);
+                if (offset < 0) {
+                    break;
+                }
+                int dirty = (x + offset / 4) / tileSize;
+                if (!changedTiles[tileRowStart + dirty]) {
+                    changedTiles[tileRowStart + dirty] = true;
+                    changed++;
+                }
+                x = (dirty + 1) * tileSize;
+            }
+        }
+        changedTileCount = changed;
+
+        if (changed == 0) {
+            unchangedFrames++;
+            return false;
+        }
+        copyChangedTiles(frame);
+        return true;
+    }
+
+    /**
+     * Bring the reference up to date; unchanged tiles are already identical
+     */
+    private void copyChangedTiles(ByteBuffer frame) {
+        for (int y = 0; y < height; y++) {
+            int tileRowStart = (y / tileSize) * tilesX;
+            int rowStart = y * width * 4;
+            int tx = 0;
+            while (tx < tilesX) {
+                if (!changedTiles[tileRowStart + tx]) {
+                    tx++;
+                    continue;
+                }
+                // Adjacent dirty tiles are copied as one run
+                int first = tx;
+                while (tx < tilesX && changedTiles[tileRowStart + tx]) {
+                    tx++;
+                }
+                int from = rowStart + first * tileSize * 4;
+                int to = rowStart + Math.min(tx * tileSize, width) * 4;
+                reference.put(from, frame, from, to - from);
+            }
+        }
+    }
+
+    /**
+     * Forget the reference frame so the next frame counts as changed
+     */
+    public void reset() {
+        hasReference = false;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Whether tile (x, y) changed in the last {@link #update}
+     */
+    public boolean isTileChanged(int tileX, int tileY) {
+        return changedTiles[tileY * tilesX + tileX];
+    }
+
+    /**
+     * The change map of the last {@link #update}, row-major, tilesX * tilesY entries.
+     * Live view - do not modify.
+     */
+    public boolean[] getChangeMap() {
+        return changedTiles;
+    }
+
+    public int getChangedTileCount() {
+        return changedTileCount;
+    }
+
+    public long getComparedFrames() {
+        return comparedFrames;
+    }
+
+    public long getUnchangedFrames() {
+        return unchangedFrames;
+    }
+
+    /**
+     * Which comparison implementation is in use
+     */
+    public String getImplementation() {
+        return comparator.toString();
+    }
+}
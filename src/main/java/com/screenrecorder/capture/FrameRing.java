@@ -0,0 +1,172 @@
+package com.screenrecorder.capture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer ring of pre-allocated direct frame buffers.
+ *
+ * The producer claims a slot, fills it and publishes it; the consumer takes the oldest
+ * published slot, drains it and releases it. No buffers are allocated after construction and
+ * no locks are taken: the two sides only share the volatile head and tail counters.
+ */
+public final class FrameRing {
+
+    public enum DropPolicy {
+        /** Discard the frame being captured when the encoder is behind */
+        DROP_NEWEST,
+        /** Stall the producer until the encoder frees a slot */
+        BLOCK
+    }
+
+    private final ByteBuffer[] slots;
+    private final DropPolicy dropPolicy;
+
+    // head: slots published by the producer; tail: slots released by the consumer
+    private volatile long head;
+    private volatile long tail;
+    private volatile boolean closed;
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+
+    // Written by the producer only
+    private volatile long droppedFrames;
+    private volatile int maxDepth;
+
+    /**
+     * @param capacity number of frames that can be queued
+     * @param frameSize bytes per frame
+     */
+    public FrameRing(int capacity, int frameSize, DropPolicy dropPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.slots = new ByteBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = ByteBuffer.allocateDirect(frameSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.dropPolicy = dropPolicy;
+    }
+
+    /**
+     * Producer: the next free slot, cleared, or null when the frame must be dropped (ring full
+     * with DROP_NEWEST, or closed)
+     */
+    public ByteBuffer claim() {
+        long h = head;
+        while (h - tail >= slots.length) {
+            if (closed) {
+                return null;
+            }
+            if (dropPolicy == DropPolicy.DROP_NEWEST) {
+                droppedFrames++;
+                return null;
+            }
+            waitingProducer = Thread.currentThread();
+            if (h - tail >= slots.length && !closed) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            waitingProducer = null;
+        }
+        if (closed) {
+            return null;
+        }
+        ByteBuffer slot = slots[(int) (h % slots.length)];
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * Producer: hand the slot returned by the last {@link #claim()} to the consumer
+     */
+    public void publish() {
+        long h = head + 1;
+        head = h;
+        int depth = (int) (h - tail);
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Consumer: the oldest published frame, or null on timeout or when closed and drained.
+     * Call {@link #release()} once the frame has been written out.
+     */
+    public ByteBuffer take(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long t = tail;
+        while (head == t) {
+            long remaining = deadline - System.nanoTime();
+            if (closed || remaining <= 0) {
+                return null;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (head == t && !closed) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waitingConsumer = null;
+        }
+        ByteBuffer slot = slots[(int) (t % slots.length)];
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * Consumer: return the slot from the last {@link #take} to the producer
+     */
+    public void release() {
+        tail = tail + 1;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Stop the ring; the consumer still drains frames already published
+     */
+    public void close() {
+        closed = true;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Frames published but not yet released
+     */
+    public int getDepth() {
+        return (int) (head - tail);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getPublishedFrames() {
+        return head;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
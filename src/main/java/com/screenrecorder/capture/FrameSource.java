@@ -0,0 +1,51 @@
+package com.screenrecorder.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A Java-side producer of raw video frames, encoded by piping them to FFmpeg's rawvideo input.
+ * Frames are packed BGRA, width * height * 4 bytes, top row first; the alpha byte is ignored. Implementations write
+ * Frames are packed BGRA, width * height * 4 bytes, top row first. Implementations write
+ * straight into the ring buffer they are handed and must not keep a reference to it.
+ */
+public interface FrameSource extends AutoCloseable {
+
+    String getName();
+
+    int getWidth();
+
+    int getHeight();
+
+    int getFrameRate();
+
+    /**
+     * Bytes per frame in BGRA
+     */
+    default int getFrameSize() {
+        return getWidth() * getHeight() * 4;
+    }
+
+    /**
+     * True when {@link #readFrame} blocks until the next frame is due (e.g. a pipe fed by
+     * another process), so the capture loop must not pace it
+     */
+    default boolean isSelfPaced() {
+        return false;
+    }
+
+    /**
+     * Prepare for capture; called once per recording part
+     */
+    void open() throws IOException;
+
+    /**
+     * Write the next frame into target, from position 0 up to {@link #getFrameSize()}
+     *
+     * @return false when the source has ended
+     */
+    boolean readFrame(ByteBuffer target) throws IOException;
+
+    @Override
+    void close();
+}
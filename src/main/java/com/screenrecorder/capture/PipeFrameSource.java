@@ -0,0 +1,90 @@
+package com.screenrecorder.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Supplier;
+
+/**
+ * Reads raw BGRA frames from a stream, typically the stdout of an external capture tool.
+ *
+ * The producer on the other end sets the pace, so the capture loop does not throttle it.
+ */
+public class PipeFrameSource implements FrameSource {
+    private final String name;
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final Supplier<InputStream> streamOpener;
+    private ReadableByteChannel channel;
+
+    /**
+     * @param streamOpener opens the stream for each recording part
+     */
+    public PipeFrameSource(String name, int width, int height, int frameRate, Supplier<InputStream> streamOpener) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.streamOpener = streamOpener;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    @Override
+    public boolean isSelfPaced() {
+        return true;
+    }
+
+    @Override
+    public void open() throws IOException {
+        InputStream stream = streamOpener.get();
+        if (stream == null) {
+            throw new IOException("No input for " + name);
+        }
+        channel = Channels.newChannel(stream);
+    }
+
+    @Override
+    public boolean readFrame(ByteBuffer target) throws IOException {
+        target.limit(getFrameSize());
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed by the other end
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.screenrecorder.capture;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Captures a screen area with java.awt.Robot.
+ *
+ * Robot returns a new image per frame, so this source allocates inside AWT; the copy into
+ * the ring is a single bulk put of the image's pixel array. RGB images leave the alpha byte
+ * zero, which is fine because FFmpeg reads the frames as bgr0 and ignores that byte.
+ */
+public class RobotFrameSource implements FrameSource {
+    private final Rectangle area;
+    private final int frameRate;
+    private Robot robot;
+    /** Conversion target for images that are not int-packed; allocated on first use */
+    private int[] converted;
+
+    public RobotFrameSource(Rectangle area, int frameRate) {
+        this.area = new Rectangle(area);
+        this.frameRate = frameRate;
+    }
+
+    @Override
+    public String getName() {
+        return "Screen " + area.width + "x" + area.height + " at " + area.x + "," + area.y;
+    }
+
+    @Override
+    public int getWidth() {
+        return area.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return area.height;
+    }
+
+    @Override
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    @Override
+    public void open() throws IOException {
+        try {
+            robot = new Robot();
+        } catch (AWTException | SecurityException e) {
+            throw new IOException("Screen capture not available: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean readFrame(ByteBuffer target) {
+        BufferedImage image = robot.createScreenCapture(area);
+        int[] pixels;
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        } else {
+            if (converted == null) {
+                converted = new int[area.width * area.height];
+            }
+            pixels = image.getRGB(0, 0, area.width, area.height, converted, 0, area.width);
+        }
+        // Little-endian ARGB ints are BGRA bytes; the ring buffers are little-endian
+        target.asIntBuffer().put(pixels, 0, area.width * area.height);
+        target.position(target.position() + area.width * area.height * 4);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        robot = null;
+    }
+}
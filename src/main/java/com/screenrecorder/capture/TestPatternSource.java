@@ -0,0 +1,77 @@
+package com.screenrecorder.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Synthetic source: vertical colour bars with a moving white line, for testing the pipeline
+ * without a screen.
+ */
+public class TestPatternSource implements FrameSource {
+    private static final int[] BAR_COLORS = {
+            0xFFFFFFFF, 0xFFFFFF00, 0xFF00FFFF, 0xFF00FF00, 0xFFFF00FF, 0xFFFF0000, 0xFF0000FF, 0xFF000000
+    };
+
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final int[] row;
+    private long frameNumber;
+
+    public TestPatternSource(int width, int height, int frameRate) {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.row = new int[width];
+        for (int x = 0; x < width; x++) {
+            row[x] = BAR_COLORS[x * BAR_COLORS.length / width];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Test pattern " + width + "x" + height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    @Override
+    public void open() {
+        frameNumber = 0;
+    }
+
+    @Override
+    public boolean readFrame(ByteBuffer target) {
+        // Little-endian ARGB ints are BGRA bytes
+        int movingRow = (int) (frameNumber++ % height);
+        for (int y = 0; y < height; y++) {
+            if (y == movingRow) {
+                for (int x = 0; x < width; x++) {
+                    target.putInt(0xFFFFFFFF);
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    target.putInt(row[x]);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
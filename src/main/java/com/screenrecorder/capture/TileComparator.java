@@ -0,0 +1,58 @@
+package com.screenrecorder.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares a run of BGRA pixels between two frames held in byte buffers.
+ */
+interface TileComparator {
+
+    /**
+     * Both buffers are views owned by the caller; their position and limit may be changed.
+     *
+     * @return byte offset from {@code from} of the first difference in [from, to), or -1
+     */
+    int mismatch(ByteBuffer previous, ByteBuffer current, int from, int to);
+
+    /**
+     * Buffer.mismatch, which HotSpot compiles to a SIMD loop over both buffers' memory
+     * without copying either of them
+     */
+    static TileComparator best() {
+        return new TileComparator() {
+            @Override
+            public int mismatch(ByteBuffer previous, ByteBuffer current, int from, int to) {
+                previous.limit(to).position(from);
+                current.limit(to).position(from);
+                return previous.mismatch(current);
+            }
+
+            @Override
+            public String toString() {
+                return "Buffer.mismatch";
+            }
+        };
+    }
+
+    /**
+     * One int per step, as a baseline for benchmarks
+     */
+    static TileComparator scalar() {
+        return new TileComparator() {
+            @Override
+            public int mismatch(ByteBuffer previous, ByteBuffer current, int from, int to) {
+                for (int i = from; i < to; i += 4) {
+                    if (previous.getInt(i) != current.getInt(i)) {
+                        return i - from;
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public String toString() {
+                return "scalar";
+            }
+        };
+    }
+}
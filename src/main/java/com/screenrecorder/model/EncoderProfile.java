@@ -0,0 +1,140 @@
+package com.screenrecorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Video encoder settings passed to FFmpeg
+ */
+public class EncoderProfile {
+    /** x264 presets from fastest to slowest; the scale other encoders' settings are mapped from */
+    public static final List<String> X264_PRESETS = List.of(
+            "ultrafast", "superfast", "veryfast", "faster", "fast", "medium", "slow", "slower", "veryslow");
+
+    private final String videoCodec;
+    private final String preset;
+    private final int quality;
+
+    public EncoderProfile(String videoCodec, String preset, int quality) {
+        this.videoCodec = videoCodec;
+        this.preset = preset;
+        this.quality = quality;
+    }
+
+    /**
+     * Final delivery settings (ffmpeg.video.codec, ffmpeg.preset, recording.default.quality)
+     */
+    public static EncoderProfile delivery() {
+        return new EncoderProfile(
+                ApplicationProperties.get("ffmpeg.video.codec", "libx264"),
+                ApplicationProperties.get("ffmpeg.preset", "fast"),
+                ApplicationProperties.getInt("recording.default.quality", 23));
+    }
+
+    /**
+     * Cheap near-lossless settings used while capturing in two-stage mode
+     */
+    public static EncoderProfile capture() {
+        return new EncoderProfile(
+                ApplicationProperties.get("ffmpeg.video.codec", "libx264"),
+                ApplicationProperties.get("ffmpeg.capture.preset", "ultrafast"),
+                ApplicationProperties.getInt("ffmpeg.capture.quality", 12));
+    }
+
+    /**
+     * Fast, lower-quality settings for proxy renditions encoded alongside the recording
+     */
+    public static EncoderProfile proxy() {
+        return new EncoderProfile(
+                ApplicationProperties.get("ffmpeg.video.codec", "libx264"),
+                ApplicationProperties.get("ffmpeg.proxy.preset", "veryfast"),
+                ApplicationProperties.getInt("ffmpeg.proxy.quality", 28));
+    }
+
+    public String getVideoCodec() {
+        return videoCodec;
+    }
+
+    public String getPreset() {
+        return preset;
+    }
+
+    /**
+     * Constant rate factor; lower is better quality
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Create a copy with a different preset
+     */
+    public EncoderProfile withPreset(String newPreset) {
+        return new EncoderProfile(videoCodec, newPreset, quality);
+    }
+
+    /**
+     * Create a copy with a different encoder; preset and quality are translated when the
+     * arguments are built
+     */
+    public EncoderProfile withVideoCodec(String newVideoCodec) {
+        return new EncoderProfile(newVideoCodec, preset, quality);
+    }
+
+    /**
+     * FFmpeg output arguments for these settings. The preset and quality use x264's scale and
+     * are mapped to the nearest equivalent for other encoders.
+     */
+    public List<String> toArguments() {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-c:v");
+        arguments.add(videoCodec);
+        int speed = X264_PRESETS.indexOf(preset);
+        if (videoCodec.endsWith("_nvenc") && speed >= 0) {
+            // p1 (fastest) to p7 (best)
+            arguments.add("-preset");
+            arguments.add("p" + Math.min(7, Math.max(1, speed)));
+            arguments.add("-rc");
+            arguments.add("vbr");
+            arguments.add("-cq");
+            arguments.add(String.valueOf(quality));
+        } else if (videoCodec.endsWith("_qsv") && speed >= 0) {
+            arguments.add("-preset");
+            arguments.add(X264_PRESETS.get(Math.max(2, speed)));
+            arguments.add("-global_quality");
+            arguments.add(String.valueOf(quality));
+        } else if (videoCodec.endsWith("_amf") && speed >= 0) {
+            arguments.add("-quality");
+            arguments.add(speed <= 3 ? "speed" : speed <= 5 ? "balanced" : "quality");
+            arguments.add("-rc");
+            arguments.add("cqp");
+            arguments.add("-qp_i");
+            arguments.add(String.valueOf(quality));
+            arguments.add("-qp_p");
+            arguments.add(String.valueOf(quality));
+        } else if (videoCodec.endsWith("_videotoolbox")) {
+            // No presets; quality 1-100, higher is better
+            arguments.add("-q:v");
+            arguments.add(String.valueOf(Math.max(1, Math.min(100, 100 - quality * 2))));
+        } else if (videoCodec.equals("libsvtav1") && speed >= 0) {
+            // 12 (fastest) to 4; its CRF scale runs higher than x264's for similar quality
+            arguments.add("-preset");
+            arguments.add(String.valueOf(12 - speed));
+            arguments.add("-crf");
+            arguments.add(String.valueOf(Math.min(63, quality + 12)));
+        } else {
+            arguments.add("-preset");
+            arguments.add(preset);
+            arguments.add("-crf");
+            arguments.add(String.valueOf(quality));
+        }
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return videoCodec + " preset=" + preset + " crf=" + quality;
+    }
+}
@@ -0,0 +1,172 @@
+package com.screenrecorder.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the installed FFmpeg build supports: video encoders, hardware acceleration methods,
+ * input devices and filters
+ */
+public class FFmpegCapabilities {
+    private static final FFmpegCapabilities UNAVAILABLE =
+            new FFmpegCapabilities(false, "", Set.of(), Set.of(), Set.of(), Set.of(), Set.of());
+
+    private final boolean available;
+    private final String version;
+    private final Set<String> videoEncoders;
+    private final Set<String> usableHardwareEncoders;
+    private final Set<String> hwaccels;
+    private final Set<String> inputDevices;
+    private final Set<String> filters;
+
+    public FFmpegCapabilities(boolean available, String version, Set<String> videoEncoders,
+                              Set<String> usableHardwareEncoders, Set<String> hwaccels,
+                              Set<String> inputDevices, Set<String> filters) {
+        this.available = available;
+        this.version = version;
+        this.videoEncoders = Collections.unmodifiableSet(new LinkedHashSet<>(videoEncoders));
+        this.usableHardwareEncoders = Collections.unmodifiableSet(new LinkedHashSet<>(usableHardwareEncoders));
+        this.hwaccels = Collections.unmodifiableSet(new LinkedHashSet<>(hwaccels));
+        this.inputDevices = Collections.unmodifiableSet(new LinkedHashSet<>(inputDevices));
+        this.filters = Collections.unmodifiableSet(new LinkedHashSet<>(filters));
+    }
+
+    /**
+     * Capabilities when no FFmpeg binary could be found or run
+     */
+    public static FFmpegCapabilities unavailable() {
+        return UNAVAILABLE;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * First line of "ffmpeg -version"
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Video encoders compiled into the build
+     */
+    public Set<String> getVideoEncoders() {
+        return videoEncoders;
+    }
+
+    /**
+     * Hardware encoders that also completed a test encode on this machine
+     */
+    public Set<String> getUsableHardwareEncoders() {
+        return usableHardwareEncoders;
+    }
+
+    public Set<String> getHwaccels() {
+        return hwaccels;
+    }
+
+    public Set<String> getInputDevices() {
+        return inputDevices;
+    }
+
+    public Set<String> getFilters() {
+        return filters;
+    }
+
+    public boolean hasFilter(String name) {
+        return filters.contains(name);
+    }
+
+    public boolean hasInputDevice(String name) {
+        return inputDevices.contains(name);
+    }
+
+    /**
+     * Whether the encoder can be used: software encoders when compiled in, hardware encoders
+     * only when the test encode succeeded
+     */
+    public boolean canEncode(String encoder) {
+        if (isHardwareEncoder(encoder)) {
+            return usableHardwareEncoders.contains(encoder);
+        }
+        return videoEncoders.contains(encoder);
+    }
+
+    /**
+     * First usable encoder in order of preference
+     *
+     * @return the encoder, or null when none of them can be used
+     */
+    public String selectEncoder(List<String> preference) {
+        for (String encoder : preference) {
+            if (canEncode(encoder)) {
+                return encoder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the encoder runs on a GPU or media engine rather than the CPU
+     */
+    public static boolean isHardwareEncoder(String encoder) {
+        return encoder.endsWith("_nvenc") || encoder.endsWith("_qsv") || encoder.endsWith("_amf")
+                || encoder.endsWith("_videotoolbox") || encoder.endsWith("_vaapi");
+    }
+
+    /**
+     * Plain map for the JSON cache
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("available", available);
+        map.put("version", version);
+        map.put("videoEncoders", new ArrayList<>(videoEncoders));
+        map.put("usableHardwareEncoders", new ArrayList<>(usableHardwareEncoders));
+        map.put("hwaccels", new ArrayList<>(hwaccels));
+        map.put("inputDevices", new ArrayList<>(inputDevices));
+        map.put("filters", new ArrayList<>(filters));
+        return map;
+    }
+
+    /**
+     * Read back a map written by {@link #toMap()}
+     */
+    public static FFmpegCapabilities fromMap(Map<?, ?> map) {
+        return new FFmpegCapabilities(
+                Boolean.TRUE.equals(map.get("available")),
+                String.valueOf(map.get("version")),
+                stringSet(map.get("videoEncoders")),
+                stringSet(map.get("usableHardwareEncoders")),
+                stringSet(map.get("hwaccels")),
+                stringSet(map.get("inputDevices")),
+                stringSet(map.get("filters")));
+    }
+
+    private static Set<String> stringSet(Object value) {
+        Set<String> set = new LinkedHashSet<>();
+        if (value instanceof List<?> list) {
+            for (Object item : list) {
+                set.add(String.valueOf(item));
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public String toString() {
+        if (!available) {
+            return "FFmpeg not available";
+        }
+        return version + " (" + videoEncoders.size() + " video encoders, hardware " + usableHardwareEncoders
+                + ", hwaccels " + hwaccels + ", " + inputDevices.size() + " input devices, "
+                + filters.size() + " filters)";
+    }
+}
@@ -0,0 +1,93 @@
+package com.screenrecorder.model;
+
+/**
+ * Immutable snapshot of one FFmpeg "-progress" block
+ */
+public class FFmpegProgress {
+    private final long frame;
+    private final double fps;
+    private final double bitrateKbps;
+    private final long totalSizeBytes;
+    private final long outTimeMicros;
+    private final long dupFrames;
+    private final long dropFrames;
+    private final double speed;
+    private final boolean finished;
+
+    public FFmpegProgress(long frame, double fps, double bitrateKbps, long totalSizeBytes,
+                          long outTimeMicros, long dupFrames, long dropFrames,
+                          double speed, boolean finished) {
+        this.frame = frame;
+        this.fps = fps;
+        this.bitrateKbps = bitrateKbps;
+        this.totalSizeBytes = totalSizeBytes;
+        this.outTimeMicros = outTimeMicros;
+        this.dupFrames = dupFrames;
+        this.dropFrames = dropFrames;
+        this.speed = speed;
+        this.finished = finished;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * Output bitrate in kbit/s, or -1 when FFmpeg reports N/A
+     */
+    public double getBitrateKbps() {
+        return bitrateKbps;
+    }
+
+    /**
+     * Bytes written so far, or -1 when FFmpeg reports N/A
+     */
+    public long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    public long getOutTimeMicros() {
+        return outTimeMicros;
+    }
+
+    public long getDupFrames() {
+        return dupFrames;
+    }
+
+    public long getDropFrames() {
+        return dropFrames;
+    }
+
+    /**
+     * Encoding speed relative to real time (1.0 = real time), or -1 when N/A
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * True for the final block FFmpeg writes before exiting
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Format the output time as HH:mm:ss
+     */
+    public String getFormattedOutTime() {
+        long totalSeconds = Math.max(0, outTimeMicros) / 1_000_000L;
+        return String.format("%02d:%02d:%02d", totalSeconds / 3600, (totalSeconds / 60) % 60, totalSeconds % 60);
+    }
+
+    @Override
+    public String toString() {
+        return "frame=" + frame + " fps=" + fps + " bitrate=" + bitrateKbps + "kbits/s"
+                + " size=" + totalSizeBytes + " time=" + getFormattedOutTime()
+                + " dup=" + dupFrames + " drop=" + dropFrames + " speed=" + speed + "x";
+    }
+}
@@ -3,6 +3,11 @@ package com.screenrecorder.model;
 import java.io.File;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.screenrecorder.capture.FrameSource;
+import com.screenrecorder.util.ApplicationProperties;
 
 /**
  * Configuration class for recording settings
@@ -16,6 +21,17 @@ public class RecordingConfig {
     private boolean recordMicrophone;
     private boolean separateAudioOutput;
     private String outputFormat;
+    private boolean segmentedOutput;
+    private int segmentDurationSeconds;
+    private boolean twoStageEncoding;
+    private FrameSource frameSource;
+    private boolean skipUnchangedFrames;
+    private List<String> streamTargets;
+    private List<Resolution> proxyResolutions;
+    private String fileNamePrefix;
+    private boolean autoTuneEncoder;
+    private boolean fragmentedOutput;
+    private int fragmentDurationMillis;
     
     public RecordingConfig() {
         this.outputDirectory = new File(System.getProperty("user.home"), "ScreenRecordings");
@@ -24,6 +40,13 @@ public class RecordingConfig {
         this.separateAudioOutput = false;
         this.outputFormat = "mp4";
         this.resolution = Resolution.HD_1080P;
+        this.segmentedOutput = Boolean.parseBoolean(ApplicationProperties.get("recording.segment.enabled", "false"));
+        this.segmentDurationSeconds = Math.max(1, ApplicationProperties.getInt("recording.segment.duration", 300));
+        this.twoStageEncoding = false;
+        this.streamTargets = new ArrayList<>();
+        this.proxyResolutions = new ArrayList<>();
+        this.fileNamePrefix = "ScreenRecording";
+        this.fragmentDurationMillis = 2000;
     }
     
     // Getters and setters
@@ -91,13 +114,157 @@ public class RecordingConfig {
         this.outputFormat = outputFormat;
     }
     
+    public boolean isSegmentedOutput() {
+        return segmentedOutput;
+    }
+    
+    public void setSegmentedOutput(boolean segmentedOutput) {
+        this.segmentedOutput = segmentedOutput;
+    }
+    
+    public int getSegmentDurationSeconds() {
+        return segmentDurationSeconds;
+    }
+    
+    public void setSegmentDurationSeconds(int segmentDurationSeconds) {
+        this.segmentDurationSeconds = segmentDurationSeconds;
+    }
+    
+    /**
+     * Capture with a cheap near-lossless profile and transcode to the final profile afterwards
+     */
+    public boolean isTwoStageEncoding() {
+        return twoStageEncoding;
+    }
+    
+    public void setTwoStageEncoding(boolean twoStageEncoding) {
+        this.twoStageEncoding = twoStageEncoding;
+    }
+    
+    /**
+     * Java-side frame source piped to FFmpeg, or null to let FFmpeg capture the screen itself
+     */
+    public FrameSource getFrameSource() {
+        return frameSource;
+    }
+    
+    public void setFrameSource(FrameSource frameSource) {
+        this.frameSource = frameSource;
+    }
+    
+    /**
+     * Encode only frames that differ from the previous one (variable frame rate output)
+     */
+    public boolean isSkipUnchangedFrames() {
+        return skipUnchangedFrames;
+    }
+    
+    public void setSkipUnchangedFrames(boolean skipUnchangedFrames) {
+        this.skipUnchangedFrames = skipUnchangedFrames;
+    }
+    
+    /**
+     * Network destinations (udp://, srt://, rtmp://) fed from the same encode as the file
+     */
+    public List<String> getStreamTargets() {
+        return streamTargets;
+    }
+    
+    public void setStreamTargets(List<String> streamTargets) {
+        this.streamTargets = new ArrayList<>(streamTargets);
+    }
+    
+    /**
+     * Smaller copies (e.g. 720p, 360p) encoded by the same FFmpeg process as the main file
+     */
+    public List<Resolution> getProxyResolutions() {
+        return proxyResolutions;
+    }
+    
+    public void setProxyResolutions(List<Resolution> proxyResolutions) {
+        this.proxyResolutions = new ArrayList<>(proxyResolutions);
+    }
+    
+    public boolean isAutoTuneEncoder() {
+        return autoTuneEncoder;
+    }
+    
+    /**
+     * Adjust preset and frame rate to the machine while recording. Changes take effect at the
+     * next segment boundary in segmented mode, otherwise when the recording is resumed.
+     */
+    public void setAutoTuneEncoder(boolean autoTuneEncoder) {
+        this.autoTuneEncoder = autoTuneEncoder;
+    }
+    
+    public boolean isFragmentedOutput() {
+        return fragmentedOutput;
+    }
+    
+    /**
+     * Write MP4 as self-contained fragments, so the file stays playable up to the last
+     * fragment if the recording is cut short. Rewritten into a regular MP4 after stop.
+     */
+    public void setFragmentedOutput(boolean fragmentedOutput) {
+        this.fragmentedOutput = fragmentedOutput;
+    }
+    
+    /**
+     * Longest stretch of recording a crash can lose in fragmented mode
+     */
+    public int getFragmentDurationMillis() {
+        return fragmentDurationMillis;
+    }
+    
+    public void setFragmentDurationMillis(int fragmentDurationMillis) {
+        this.fragmentDurationMillis = fragmentDurationMillis;
+    }
+    
+    public String getFileNamePrefix() {
+        return fileNamePrefix;
+    }
+    
+    /**
+     * Start of generated file names, e.g. to tell concurrent sessions apart
+     */
+    public void setFileNamePrefix(String fileNamePrefix) {
+        this.fileNamePrefix = fileNamePrefix;
+    }
+    
+    /**
+     * Create an independent copy of this configuration
+     */
+    public RecordingConfig copy() {
+        RecordingConfig copy = new RecordingConfig();
+        copy.videoSource = videoSource;
+        copy.audioSource = audioSource;
+        copy.resolution = resolution;
+        copy.outputDirectory = outputDirectory;
+        copy.recordSystemAudio = recordSystemAudio;
+        copy.recordMicrophone = recordMicrophone;
+        copy.separateAudioOutput = separateAudioOutput;
+        copy.outputFormat = outputFormat;
+        copy.segmentedOutput = segmentedOutput;
+        copy.segmentDurationSeconds = segmentDurationSeconds;
+        copy.twoStageEncoding = twoStageEncoding;
+        copy.frameSource = frameSource;
+        copy.skipUnchangedFrames = skipUnchangedFrames;
+        copy.streamTargets = new ArrayList<>(streamTargets);
+        copy.proxyResolutions = new ArrayList<>(proxyResolutions);
+        copy.fileNamePrefix = fileNamePrefix;
+        copy.autoTuneEncoder = autoTuneEncoder;
+        copy.fragmentedOutput = fragmentedOutput;
+        copy.fragmentDurationMillis = fragmentDurationMillis;
+        return copy;
+    }
+    
     /**
      * Generate a filename with timestamp
      */
     public String generateFileName() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
         String timestamp = LocalDateTime.now().format(formatter);
-        return "ScreenRecording_" + timestamp;
+        return fileNamePrefix + "_" + timestamp;
     }
     
     /**
@@ -0,0 +1,77 @@
+package com.screenrecorder.model;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * Outcome of a finished recording session
+ */
+public class RecordingResult {
+    private final boolean success;
+    private final File file;
+    private final long sizeBytes;
+    private final Duration duration;
+    private final Duration finalizeTime;
+    private final boolean forced;
+    private final String message;
+
+    /**
+     * @param file the recording, or the segment playlist; null when nothing was kept
+     * @param finalizeTime from the stop request until the file was complete
+     * @param forced true when FFmpeg had to be terminated instead of finishing on its own
+     */
+    public RecordingResult(boolean success, File file, long sizeBytes, Duration duration,
+                           Duration finalizeTime, boolean forced, String message) {
+        this.success = success;
+        this.file = file;
+        this.sizeBytes = sizeBytes;
+        this.duration = duration;
+        this.finalizeTime = finalizeTime;
+        this.forced = forced;
+        this.message = message;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Bytes on disk, all segments together in segmented mode
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Recorded media duration, pauses excluded
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public Duration getFinalizeTime() {
+        return finalizeTime;
+    }
+
+    public boolean isForced() {
+        return forced;
+    }
+
+    /**
+     * Status text as shown to the user
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message + (file != null ? " - " + file.getName() + ", " + sizeBytes / 1024 + " KB" : "")
+                + ", " + duration.toSeconds() + " s recorded, finalized in " + finalizeTime.toMillis() + " ms"
+                + (forced ? " (forced)" : "");
+    }
+}
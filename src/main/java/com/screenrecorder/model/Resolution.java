@@ -52,4 +52,8 @@ public class Resolution {
     public static final Resolution HD_1080P = new Resolution("1080p", 1920, 1080);
     public static final Resolution QHD_2K = new Resolution("2K", 2560, 1440);
     public static final Resolution UHD_4K = new Resolution("4K", 3840, 2160);
+    
+    // Proxy resolutions
+    public static final Resolution HD_720P = new Resolution("720p", 1280, 720);
+    public static final Resolution SD_360P = new Resolution("360p", 640, 360);
 }
@@ -0,0 +1,47 @@
+package com.screenrecorder.model;
+
+import java.io.File;
+
+/**
+ * A closed segment of a segmented recording
+ */
+public class SegmentInfo {
+    private final int index;
+    private final File file;
+    private final double durationSeconds;
+    private final long sizeBytes;
+    private final long closedAtMillis;
+
+    public SegmentInfo(int index, File file, double durationSeconds, long sizeBytes, long closedAtMillis) {
+        this.index = index;
+        this.file = file;
+        this.durationSeconds = durationSeconds;
+        this.sizeBytes = sizeBytes;
+        this.closedAtMillis = closedAtMillis;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getClosedAtMillis() {
+        return closedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + " (" + durationSeconds + "s, " + sizeBytes + " bytes)";
+    }
+}
@@ -0,0 +1,104 @@
+package com.screenrecorder.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Process-wide count of live captures (FFmpeg sessions and OBS recordings).
+ *
+ * Background work uses it to stay out of the way while anything is being recorded.
+ */
+public final class CaptureActivity {
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    private static final List<Consumer<Boolean>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private CaptureActivity() {
+    }
+
+    /**
+     * Register a live capture
+     */
+    public static void captureStarted() {
+        if (ACTIVE.incrementAndGet() == 1) {
+            notifyListeners(true);
+        }
+    }
+
+    /**
+     * Unregister a live capture; must pair with {@link #captureStarted()}
+     */
+    public static void captureStopped() {
+        int remaining = ACTIVE.updateAndGet(count -> Math.max(0, count - 1));
+        if (remaining == 0) {
+            notifyListeners(false);
+        }
+    }
+
+    /**
+     * A registration for an owner that learns about its capture from repeated or out-of-order
+     * notifications, such as OBS events and status re-reads after a reconnect
+     */
+    public static Registration newRegistration() {
+        return new Registration();
+    }
+
+    public static boolean isActive() {
+        return ACTIVE.get() > 0;
+    }
+
+    public static int getActiveCount() {
+        return ACTIVE.get();
+    }
+
+    /**
+     * Listen for transitions between "no capture" (false) and "at least one capture" (true)
+     */
+    public static void addListener(Consumer<Boolean> listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Consumer<Boolean> listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * One owner's capture, counted at most once however often it is reported
+     */
+    public static final class Registration {
+        private final AtomicBoolean registered = new AtomicBoolean();
+
+        private Registration() {
+        }
+
+        /**
+         * Report whether the owner is capturing; only a change from the last report starts or
+         * stops the capture
+         */
+        public void setActive(boolean active) {
+            if (registered.compareAndSet(!active, active)) {
+                if (active) {
+                    captureStarted();
+                } else {
+                    captureStopped();
+                }
+            }
+        }
+
+        public boolean isActive() {
+            return registered.get();
+        }
+    }
+
+    private static void notifyListeners(boolean active) {
+        for (Consumer<Boolean> listener : LISTENERS) {
+            try {
+                listener.accept(active);
+            } catch (Exception e) {
+                System.err.println("Capture activity listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
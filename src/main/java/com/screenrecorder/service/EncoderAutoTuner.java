@@ -0,0 +1,214 @@
+package com.screenrecorder.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.screenrecorder.model.EncoderProfile;
+import com.screenrecorder.model.FFmpegProgress;
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Picks x264 preset and frame rate from how well the live encoder keeps up.
+ *
+ * Progress blocks are collected into windows of a few seconds. A window in which FFmpeg runs
+ * below real time or has to drop or duplicate frames is a sign of overload: the tuner then asks
+ * for a faster preset, and once the fastest preset is reached, for a lower frame rate. After
+ * several calm windows with CPU to spare it steps back towards the configured settings, frame
+ * rate first, but never beyond them.
+ *
+ * A running FFmpeg process cannot change its encoder, so decisions are only recorded as pending;
+ * the recording applies them when it starts its next process, at a segment boundary or resume.
+ */
+public class EncoderAutoTuner {
+    static final List<String> PRESETS = EncoderProfile.X264_PRESETS;
+    static final int[] FRAME_RATES = {30, 24, 20, 15, 10};
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final EncoderProfile baseline;
+    private final int baselinePresetIndex;
+    private final int baselineRateIndex;
+    private final long windowMicros;
+    private final double minSpeed;
+    private final double maxCpuForUpgrade;
+    private final int calmWindowsForUpgrade;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final List<String> decisions = new CopyOnWriteArrayList<>();
+
+    // Settings of the running process and the ones requested for the next
+    private int presetIndex;
+    private int rateIndex;
+    private int pendingPresetIndex;
+    private int pendingRateIndex;
+
+    // Current window
+    private long windowStartMicros = -1;
+    private long lastOutTimeMicros;
+    private long lastDropFrames;
+    private long lastDupFrames;
+    private long windowDropped;
+    private long windowDuplicated;
+    private double speedSum;
+    private int speedSamples;
+    private int calmWindows;
+
+    /**
+     * @param baseline configured settings; the tuner never goes slower than these
+     * @param baselineFrameRate configured frame rate; the tuner never goes above it
+     */
+    public EncoderAutoTuner(EncoderProfile baseline, int baselineFrameRate) {
+        this.baseline = baseline;
+        int preset = PRESETS.indexOf(baseline.getPreset());
+        // Unknown presets (other encoders) are left alone, only the frame rate is tuned
+        this.baselinePresetIndex = preset;
+        this.baselineRateIndex = rateIndexFor(baselineFrameRate);
+        this.presetIndex = pendingPresetIndex = preset;
+        this.rateIndex = pendingRateIndex = baselineRateIndex;
+        this.windowMicros = ApplicationProperties.getInt("encoder.autotune.window.seconds", 5) * 1_000_000L;
+        this.minSpeed = ApplicationProperties.getInt("encoder.autotune.min.speed.percent", 97) / 100.0;
+        this.maxCpuForUpgrade = ApplicationProperties.getInt("encoder.autotune.upgrade.max.cpu.percent", 60) / 100.0;
+        this.calmWindowsForUpgrade = ApplicationProperties.getInt("encoder.autotune.upgrade.calm.windows", 6);
+    }
+
+    private static int rateIndexFor(int frameRate) {
+        for (int i = 0; i < FRAME_RATES.length; i++) {
+            if (FRAME_RATES[i] <= frameRate) {
+                return i;
+            }
+        }
+        return FRAME_RATES.length - 1;
+    }
+
+    /**
+     * Feed one progress block of the running process
+     */
+    public synchronized void onProgress(FFmpegProgress progress) {
+        long outTime = progress.getOutTimeMicros();
+        if (windowStartMicros < 0 || outTime < lastOutTimeMicros) {
+            // First block, or a new process whose counters start from zero
+            startWindow(outTime);
+            lastDropFrames = progress.getDropFrames();
+            lastDupFrames = progress.getDupFrames();
+            lastOutTimeMicros = outTime;
+            return;
+        }
+        lastOutTimeMicros = outTime;
+
+        windowDropped += Math.max(0, progress.getDropFrames() - lastDropFrames);
+        windowDuplicated += Math.max(0, progress.getDupFrames() - lastDupFrames);
+        lastDropFrames = progress.getDropFrames();
+        lastDupFrames = progress.getDupFrames();
+        if (progress.getSpeed() > 0) {
+            speedSum += progress.getSpeed();
+            speedSamples++;
+        }
+
+        if (outTime - windowStartMicros >= windowMicros || progress.isFinished()) {
+            evaluateWindow();
+            startWindow(outTime);
+        }
+    }
+
+    private void startWindow(long outTime) {
+        windowStartMicros = outTime;
+        windowDropped = 0;
+        windowDuplicated = 0;
+        speedSum = 0;
+        speedSamples = 0;
+    }
+
+    private void evaluateWindow() {
+        if (hasPendingChange()) {
+            // Judge the new settings before asking for more
+            calmWindows = 0;
+            return;
+        }
+        double speed = speedSamples > 0 ? speedSum / speedSamples : 1.0;
+        double cpu = getCpuLoad();
+        boolean behind = speed < minSpeed || windowDropped > 0 || windowDuplicated > 0;
+        String metrics = String.format("speed %.2fx, %d dropped, %d duplicated, CPU %s",
+                speed, windowDropped, windowDuplicated, cpu < 0 ? "n/a" : Math.round(cpu * 100) + "%");
+
+        if (behind) {
+            calmWindows = 0;
+            if (pendingPresetIndex > 0) {
+                pendingPresetIndex--;
+                decide(metrics, "faster preset " + PRESETS.get(pendingPresetIndex));
+            } else if (pendingRateIndex < FRAME_RATES.length - 1) {
+                pendingRateIndex++;
+                decide(metrics, "lower frame rate " + FRAME_RATES[pendingRateIndex] + " fps");
+            }
+            return;
+        }
+
+        boolean headroom = cpu >= 0 && cpu <= maxCpuForUpgrade;
+        if (!headroom || ++calmWindows < calmWindowsForUpgrade) {
+            return;
+        }
+        calmWindows = 0;
+        if (pendingRateIndex > baselineRateIndex) {
+            pendingRateIndex--;
+            decide(metrics, "restore frame rate " + FRAME_RATES[pendingRateIndex] + " fps");
+        } else if (pendingPresetIndex >= 0 && pendingPresetIndex < baselinePresetIndex) {
+            pendingPresetIndex++;
+            decide(metrics, "slower preset " + PRESETS.get(pendingPresetIndex));
+        }
+    }
+
+    private void decide(String metrics, String action) {
+        String decision = LocalTime.now().format(TIME_FORMAT) + " " + metrics + " -> " + action;
+        decisions.add(decision);
+        System.out.println("Encoder auto-tuner: " + decision + " (from the next segment)");
+    }
+
+    /**
+     * System CPU load between 0 and 1, or -1 when the platform does not report it
+     */
+    private double getCpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean sunOs) {
+            return sunOs.getCpuLoad();
+        }
+        double load = os.getSystemLoadAverage();
+        return load < 0 ? -1 : Math.min(1.0, load / os.getAvailableProcessors());
+    }
+
+    /**
+     * Whether the settings for the next process differ from the running one
+     */
+    public synchronized boolean hasPendingChange() {
+        return pendingPresetIndex != presetIndex || pendingRateIndex != rateIndex;
+    }
+
+    /**
+     * Make the pending settings current; call when the next process is about to start
+     */
+    public synchronized void applyPending() {
+        presetIndex = pendingPresetIndex;
+        rateIndex = pendingRateIndex;
+        windowStartMicros = -1;
+        calmWindows = 0;
+    }
+
+    /**
+     * Encoder settings for the running (or next, after {@link #applyPending()}) process
+     */
+    public synchronized EncoderProfile getProfile() {
+        return presetIndex < 0 ? baseline : baseline.withPreset(PRESETS.get(presetIndex));
+    }
+
+    public synchronized int getFrameRate() {
+        return FRAME_RATES[rateIndex];
+    }
+
+    /**
+     * Every decision so far, oldest first, as logged
+     */
+    public List<String> getDecisions() {
+        return new ArrayList<>(decisions);
+    }
+}
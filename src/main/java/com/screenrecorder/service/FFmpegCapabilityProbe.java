@@ -0,0 +1,335 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenrecorder.model.EncoderProfile;
+import com.screenrecorder.model.FFmpegCapabilities;
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Finds out once what the installed FFmpeg supports and remembers it across runs.
+ *
+ * The lists printed by -encoders, -hwaccels, -devices and -filters are parsed, and every
+ * hardware encoder in the preference list is tried with a tiny test encode, since a build
+ * can include NVENC or QSV without the GPU or driver being present. The result is cached in
+ * the user's home directory under the binary's path, size and modification time, so later
+ * startups only look at the file and spawn no processes until FFmpeg is replaced.
+ */
+public class FFmpegCapabilityProbe {
+    private static final String CACHE_FILE = "screen-recorder-ffmpeg-capabilities.json";
+    private static final long PROBE_TIMEOUT_SECONDS = 15;
+    private static final FFmpegCapabilityProbe DEFAULT = new FFmpegCapabilityProbe(
+            new File(System.getProperty("user.home"), CACHE_FILE));
+
+    private final File cacheFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FFmpegCapabilities capabilities;
+
+    public FFmpegCapabilityProbe(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Probe shared by the whole application, cached in the user's home directory
+     */
+    public static FFmpegCapabilityProbe getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Capabilities of the FFmpeg on the PATH; probes on first use unless the cache is current.
+     * Blocks while probing, so call it off the FX thread.
+     */
+    public synchronized FFmpegCapabilities getCapabilities() {
+        if (capabilities == null) {
+            capabilities = load();
+        }
+        return capabilities;
+    }
+
+    /**
+     * Forget the result and probe again, e.g. after a driver update
+     */
+    public synchronized FFmpegCapabilities refresh() {
+        capabilities = null;
+        File binary = findBinary();
+        if (binary == null) {
+            capabilities = FFmpegCapabilities.unavailable();
+        } else {
+            capabilities = probe();
+            saveToCache(binary, capabilities);
+        }
+        return capabilities;
+    }
+
+    /**
+     * The fastest usable video encoder from ffmpeg.encoder.preference
+     *
+     * @param fallback returned when FFmpeg is unavailable or none of the preferred encoders works
+     */
+    public String selectVideoEncoder(String fallback) {
+        FFmpegCapabilities current = getCapabilities();
+        if (!current.isAvailable()) {
+            return fallback;
+        }
+        String encoder = current.selectEncoder(getPreference());
+        return encoder != null ? encoder : fallback;
+    }
+
+    /**
+     * Settings for live capture: the configured profile, with its codec replaced by the fastest
+     * usable encoder when ffmpeg.capture.encoder is "auto"
+     */
+    public EncoderProfile forCapture(EncoderProfile configured) {
+        if (!"auto".equalsIgnoreCase(ApplicationProperties.get("ffmpeg.capture.encoder", "auto"))) {
+            return configured;
+        }
+        String encoder = selectVideoEncoder(configured.getVideoCodec());
+        return encoder.equals(configured.getVideoCodec()) ? configured : configured.withVideoCodec(encoder);
+    }
+
+    private static List<String> getPreference() {
+        List<String> preference = new ArrayList<>();
+        for (String name : ApplicationProperties.get("ffmpeg.encoder.preference",
+                "h264_nvenc,h264_qsv,h264_amf,h264_videotoolbox,libx264,libsvtav1").split(",")) {
+            if (!name.isBlank()) {
+                preference.add(name.trim());
+            }
+        }
+        return preference;
+    }
+
+    private FFmpegCapabilities load() {
+        File binary = findBinary();
+        if (binary == null) {
+            System.err.println("FFmpeg not found on the PATH");
+            return FFmpegCapabilities.unavailable();
+        }
+
+        FFmpegCapabilities cached = loadFromCache(binary);
+        if (cached != null) {
+            return cached;
+        }
+
+        long started = System.nanoTime();
+        FFmpegCapabilities probed = probe();
+        System.out.println("Probed " + probed + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        saveToCache(binary, probed);
+        return probed;
+    }
+
+    /**
+     * Locate the "ffmpeg" that ProcessBuilder would start: the first one on the PATH, which
+     * is also what every recording and probe command runs, so the cache key matches it
+     */
+    static File findBinary() {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        boolean windows = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("win");
+        for (String directory : path.split(File.pathSeparator)) {
+            File candidate = new File(directory, windows ? "ffmpeg.exe" : "ffmpeg");
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String cacheKey(File binary) {
+        return binary.getAbsolutePath();
+    }
+
+    private FFmpegCapabilities loadFromCache(File binary) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try {
+            Map<?, ?> cache = objectMapper.readValue(cacheFile, Map.class);
+            if (cache.get(cacheKey(binary)) instanceof Map<?, ?> entry
+                    && entry.get("size") instanceof Number size && size.longValue() == binary.length()
+                    && entry.get("lastModified") instanceof Number modified && modified.longValue() == binary.lastModified()
+                    && entry.get("capabilities") instanceof Map<?, ?> stored) {
+                return FFmpegCapabilities.fromMap(stored);
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable FFmpeg capability cache: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void saveToCache(File binary, FFmpegCapabilities probed) {
+        if (!probed.isAvailable()) {
+            // A failed probe is not worth remembering
+            return;
+        }
+        Map<String, Object> cache = new LinkedHashMap<>();
+        if (cacheFile.isFile()) {
+            try {
+                cache.putAll(objectMapper.readValue(cacheFile, Map.class));
+            } catch (IOException e) {
+                // Rewritten below
+            }
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("size", binary.length());
+        entry.put("lastModified", binary.lastModified());
+        entry.put("probedAt", System.currentTimeMillis());
+        entry.put("capabilities", probed.toMap());
+        cache.put(cacheKey(binary), entry);
+
+        try {
+            File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+            objectMapper.writeValue(tempFile, cache);
+            Files.move(tempFile.toPath(), cacheFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write FFmpeg capability cache: " + e.getMessage());
+        }
+    }
+
+    private FFmpegCapabilities probe() {
+        try {
+            String versionOutput = run(List.of("-version"));
+            String version = versionOutput.lines().findFirst().orElse("").trim();
+            Set<String> encoders = parseVideoEncoders(run(List.of("-encoders")));
+            Set<String> hwaccels = parseHwaccels(run(List.of("-hwaccels")));
+            Set<String> devices = parseInputDevices(run(List.of("-devices")));
+            Set<String> filters = parseFilters(run(List.of("-filters")));
+
+            Set<String> usableHardware = new LinkedHashSet<>();
+            for (String encoder : getPreference()) {
+                if (FFmpegCapabilities.isHardwareEncoder(encoder) && encoders.contains(encoder) && testEncode(encoder)) {
+                    usableHardware.add(encoder);
+                }
+            }
+            return new FFmpegCapabilities(true, version, encoders, usableHardware, hwaccels, devices, filters);
+        } catch (IOException e) {
+            System.err.println("FFmpeg capability probe failed: " + e.getMessage());
+            return FFmpegCapabilities.unavailable();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FFmpegCapabilities.unavailable();
+        }
+    }
+
+    /**
+     * Encode a few synthetic frames to find out whether the hardware behind an encoder is there
+     */
+    private boolean testEncode(String encoder) throws InterruptedException {
+        List<String> arguments = List.of("-y", "-f", "lavfi", "-i", "color=black:size=256x256:rate=30",
+                "-frames:v", "5", "-c:v", encoder, "-f", "null", "-");
+        try {
+            return new FFmpegProcessRunner(arguments).run(0, null) == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String run(List<String> arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-hide_banner");
+        command.addAll(arguments);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("ffmpeg " + String.join(" ", arguments) + " timed out");
+        }
+        return output;
+    }
+
+    /**
+     * " V....D libx264   libx264 H.264 / AVC ..." lines after the "------" separator
+     */
+    static Set<String> parseVideoEncoders(String output) {
+        Set<String> encoders = new LinkedHashSet<>();
+        for (String[] fields : listEntries(output)) {
+            if (fields.length >= 2 && fields[0].startsWith("V")) {
+                encoders.add(fields[1]);
+            }
+        }
+        return encoders;
+    }
+
+    /**
+     * "Hardware acceleration methods:" followed by one name per line
+     */
+    static Set<String> parseHwaccels(String output) {
+        Set<String> hwaccels = new LinkedHashSet<>();
+        boolean inList = false;
+        for (String line : output.lines().toList()) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("Hardware acceleration methods")) {
+                inList = true;
+            } else if (inList && !trimmed.isEmpty()) {
+                hwaccels.add(trimmed);
+            }
+        }
+        return hwaccels;
+    }
+
+    /**
+     * " D  dshow   DirectShow input device" lines after the "--" separator; D marks input
+     */
+    static Set<String> parseInputDevices(String output) {
+        Set<String> devices = new LinkedHashSet<>();
+        for (String[] fields : listEntries(output)) {
+            if (fields.length >= 2 && fields[0].contains("D")) {
+                devices.add(fields[1]);
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * " TSC scale   V->V   Scale the input video size" lines, recognised by their "->" column
+     */
+    static Set<String> parseFilters(String output) {
+        Set<String> filters = new LinkedHashSet<>();
+        for (String line : output.lines().toList()) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length >= 3 && fields[2].contains("->")) {
+                filters.add(fields[1]);
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Whitespace-split lines following the first line made only of dashes
+     */
+    private static List<String[]> listEntries(String output) {
+        List<String[]> entries = new ArrayList<>();
+        boolean inList = false;
+        for (String line : output.lines().toList()) {
+            String trimmed = line.trim();
+            if (!inList) {
+                inList = !trimmed.isEmpty() && trimmed.chars().allMatch(c -> c == '-');
+            } else if (!trimmed.isEmpty()) {
+                entries.add(trimmed.split("\\s+"));
+            }
+        }
+        return entries;
+    }
+}
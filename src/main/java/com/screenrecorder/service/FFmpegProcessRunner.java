@@ -0,0 +1,161 @@
+package com.screenrecorder.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Runs a short-lived FFmpeg job (concat, remux, transcode...) and reports its progress.
+ *
+ * Progress is read from "-progress pipe:1" and reported as a fraction of the expected
+ * output duration. The last lines of the log are kept for error reporting.
+ */
+public class FFmpegProcessRunner {
+    private static final int ERROR_TAIL_LINES = 20;
+
+    private final List<String> arguments;
+    private final Deque<String> logTail = new ArrayDeque<>();
+    private File workingDirectory;
+    private boolean lowPriority;
+    private volatile Process process;
+    private volatile boolean cancelled;
+
+    /**
+     * @param arguments FFmpeg arguments without the leading "ffmpeg"
+     */
+    public FFmpegProcessRunner(List<String> arguments) {
+        this.arguments = arguments;
+    }
+
+    public void setWorkingDirectory(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    /**
+     * Run FFmpeg below normal process priority so it yields the CPU to live capture
+     */
+    public void setLowPriority(boolean lowPriority) {
+        this.lowPriority = lowPriority;
+    }
+
+    /**
+     * Run the job to completion
+     *
+     * @param expectedDurationMicros output duration used to compute the fraction, 0 if unknown
+     * @param progressListener receives values between 0 and 1, may be null
+     * @return the FFmpeg exit code
+     */
+    public int run(long expectedDurationMicros, DoubleConsumer progressListener)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        if (lowPriority) {
+            command.addAll(lowPriorityLauncher());
+        }
+        command.add("ffmpeg");
+        command.add("-hide_banner");
+        command.add("-progress");
+        command.add("pipe:1");
+        command.add("-nostats");
+        command.addAll(arguments);
+
+        System.out.println("FFmpeg job: " + String.join(" ", command));
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        if (workingDirectory != null) {
+            pb.directory(workingDirectory);
+        }
+
+        synchronized (this) {
+            if (cancelled) {
+                throw new InterruptedException("FFmpeg job cancelled");
+            }
+            process = pb.start();
+        }
+        Process current = process;
+        current.getOutputStream().close();
+
+        Thread logReader = new Thread(() -> drainLog(current.getErrorStream()), "ffmpeg-job-log");
+        logReader.setDaemon(true);
+        logReader.start();
+
+        try (InputStream progressStream = current.getInputStream()) {
+            new FFmpegProgressParser().parse(progressStream, progress -> {
+                if (progressListener == null) {
+                    return;
+                }
+                if (progress.isFinished()) {
+                    progressListener.accept(1.0);
+                } else if (expectedDurationMicros > 0) {
+                    progressListener.accept(Math.min(1.0,
+                            (double) progress.getOutTimeMicros() / expectedDurationMicros));
+                }
+            }, null);
+        }
+
+        int exitCode = current.waitFor();
+        logReader.join(1000);
+        if (cancelled) {
+            throw new InterruptedException("FFmpeg job cancelled");
+        }
+        return exitCode;
+    }
+
+    /**
+     * Kill the running job; {@link #run} then throws InterruptedException
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (process != null && process.isAlive()) {
+            // The launcher may have started FFmpeg as a child process
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * The last lines FFmpeg logged, for error messages
+     */
+    public String getErrorOutput() {
+        synchronized (logTail) {
+            return String.join("\n", logTail);
+        }
+    }
+
+    /**
+     * Command prefix that starts the next program at reduced priority
+     */
+    private static List<String> lowPriorityLauncher() {
+        if (System.getProperty("os.name", "").toLowerCase().contains("win")) {
+            // "start /b /wait" keeps the same console (and pipes) and returns FFmpeg's exit code
+            return List.of("cmd", "/c", "start", "\"\"", "/belownormal", "/b", "/wait");
+        }
+        return List.of("nice", "-n", "10");
+    }
+
+    private void drainLog(InputStream errorStream) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (logTail) {
+                    if (logTail.size() == ERROR_TAIL_LINES) {
+                        logTail.removeFirst();
+                    }
+                    logTail.addLast(line);
+                }
+            }
+        } catch (IOException e) {
+            // Process ended
+        }
+    }
+}
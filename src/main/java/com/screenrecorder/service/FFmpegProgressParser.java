@@ -0,0 +1,209 @@
+package com.screenrecorder.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import com.screenrecorder.model.FFmpegProgress;
+
+/**
+ * Parser for the key=value stream FFmpeg writes with "-progress".
+ *
+ * Bytes are read into a reused buffer and numbers are parsed in place, so the only
+ * allocation per progress block is the emitted {@link FFmpegProgress} snapshot.
+ * Lines that are not progress keys are handed to an optional line consumer, which lets
+ * the same parser read a stream where progress and log output are interleaved.
+ */
+public class FFmpegProgressParser {
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private static final byte[] KEY_FRAME = ascii("frame");
+    private static final byte[] KEY_FPS = ascii("fps");
+    private static final byte[] KEY_BITRATE = ascii("bitrate");
+    private static final byte[] KEY_TOTAL_SIZE = ascii("total_size");
+    private static final byte[] KEY_OUT_TIME_US = ascii("out_time_us");
+    private static final byte[] KEY_DUP_FRAMES = ascii("dup_frames");
+    private static final byte[] KEY_DROP_FRAMES = ascii("drop_frames");
+    private static final byte[] KEY_SPEED = ascii("speed");
+    private static final byte[] KEY_PROGRESS = ascii("progress");
+    private static final byte[] VALUE_END = ascii("end");
+
+    private final byte[] readBuffer = new byte[8192];
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+
+    // Values of the block currently being read
+    private long frame;
+    private double fps;
+    private double bitrateKbps = -1;
+    private long totalSize = -1;
+    private long outTimeMicros;
+    private long dupFrames;
+    private long dropFrames;
+    private double speed = -1;
+
+    /**
+     * Read the stream until EOF, emitting one snapshot per "progress=" line
+     *
+     * @param in the FFmpeg output stream carrying the progress data
+     * @param progressConsumer receives every completed progress block
+     * @param lineConsumer receives any other line, may be null
+     */
+    public void parse(InputStream in, Consumer<FFmpegProgress> progressConsumer,
+                      Consumer<String> lineConsumer) throws IOException {
+        int read;
+        while ((read = in.read(readBuffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = readBuffer[i];
+                if (b == '\n' || b == '\r') {
+                    if (lineLength > 0) {
+                        processLine(progressConsumer, lineConsumer);
+                        lineLength = 0;
+                    }
+                } else if (lineLength < MAX_LINE_LENGTH) {
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        if (lineLength > 0) {
+            processLine(progressConsumer, lineConsumer);
+            lineLength = 0;
+        }
+    }
+
+    private void processLine(Consumer<FFmpegProgress> progressConsumer, Consumer<String> lineConsumer) {
+        int eq = indexOf(line, lineLength, (byte) '=');
+        if (eq > 0 && handleKey(eq, progressConsumer)) {
+            return;
+        }
+        if (lineConsumer != null) {
+            lineConsumer.accept(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Store the value of a known key; returns false for lines that are not progress keys
+     */
+    private boolean handleKey(int eq, Consumer<FFmpegProgress> progressConsumer) {
+        int valueStart = eq + 1;
+        if (keyEquals(KEY_FRAME, eq)) {
+            frame = parseLong(valueStart, lineLength, 0);
+        } else if (keyEquals(KEY_FPS, eq)) {
+            fps = parseDouble(valueStart, lineLength, 0);
+        } else if (keyEquals(KEY_BITRATE, eq)) {
+            bitrateKbps = parseDouble(valueStart, lineLength, -1);
+        } else if (keyEquals(KEY_TOTAL_SIZE, eq)) {
+            totalSize = parseLong(valueStart, lineLength, -1);
+        } else if (keyEquals(KEY_OUT_TIME_US, eq)) {
+            outTimeMicros = parseLong(valueStart, lineLength, outTimeMicros);
+        } else if (keyEquals(KEY_DUP_FRAMES, eq)) {
+            dupFrames = parseLong(valueStart, lineLength, 0);
+        } else if (keyEquals(KEY_DROP_FRAMES, eq)) {
+            dropFrames = parseLong(valueStart, lineLength, 0);
+        } else if (keyEquals(KEY_SPEED, eq)) {
+            speed = parseDouble(valueStart, lineLength, -1);
+        } else if (keyEquals(KEY_PROGRESS, eq)) {
+            boolean finished = lineLength - valueStart == VALUE_END.length
+                    && regionEquals(VALUE_END, valueStart);
+            progressConsumer.accept(new FFmpegProgress(frame, fps, bitrateKbps, totalSize,
+                    outTimeMicros, dupFrames, dropFrames, speed, finished));
+        } else {
+            // Other progress keys (stream_0_0_q, out_time, dup/drop aliases...) are
+            // recognised by their shape but not needed
+            return isProgressKey(eq);
+        }
+        return true;
+    }
+
+    /**
+     * FFmpeg progress keys are lower-case identifiers without spaces
+     */
+    private boolean isProgressKey(int eq) {
+        for (int i = 0; i < eq; i++) {
+            byte b = line[i];
+            if (!((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keyEquals(byte[] key, int eq) {
+        return eq == key.length && regionEquals(key, 0);
+    }
+
+    private boolean regionEquals(byte[] expected, int offset) {
+        for (int i = 0; i < expected.length; i++) {
+            if (line[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a decimal integer, returning the fallback for N/A or malformed values
+     */
+    private long parseLong(int start, int end, long fallback) {
+        while (start < end && line[start] == ' ') start++;
+        boolean negative = start < end && line[start] == '-';
+        if (negative) start++;
+        if (start >= end || line[start] < '0' || line[start] > '9') {
+            return fallback;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a decimal number with an optional unit suffix ("1.02x", "2411.3kbits/s")
+     */
+    private double parseDouble(int start, int end, double fallback) {
+        while (start < end && line[start] == ' ') start++;
+        boolean negative = start < end && line[start] == '-';
+        if (negative) start++;
+        if (start >= end || line[start] < '0' || line[start] > '9') {
+            return fallback;
+        }
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean inFraction = false;
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+            if (b == '.' && !inFraction) {
+                inFraction = true;
+            } else if (b >= '0' && b <= '9') {
+                if (inFraction) {
+                    if (scale < 1_000_000_000L) {
+                        fraction = fraction * 10 + (b - '0');
+                        scale *= 10;
+                    }
+                } else {
+                    whole = whole * 10 + (b - '0');
+                }
+            } else {
+                break;
+            }
+        }
+        double value = whole + (double) fraction / scale;
+        return negative ? -value : value;
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte target) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == target) return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,19 +1,41 @@
 package com.screenrecorder.service;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import com.screenrecorder.capture.FrameCapture;
+import com.screenrecorder.model.EncoderProfile;
+import com.screenrecorder.model.FFmpegProgress;
 import com.screenrecorder.model.RecordingConfig;
+import com.screenrecorder.model.RecordingResult;
+import com.screenrecorder.model.Resolution;
+import com.screenrecorder.model.SegmentInfo;
+import com.screenrecorder.util.ApplicationProperties;
+import com.screenrecorder.util.CoalescingPublisher;
 
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
@@ -21,40 +43,153 @@ import javafx.beans.property.StringProperty;
  * Service for managing FFmpeg recording operations
  */
 public class FFmpegService {
+    private static final String REPLAY_DIRECTORY_NAME = ".replay-buffer";
+    private static final int REPLAY_SEGMENT_SECONDS = 2;
+    private static final int DEFAULT_FRAME_RATE = 30;
+    private static final int STOP_KILL_GRACE_SECONDS = 5;
+    private static final String FRAGMENT_MOVFLAGS = "+frag_keyframe+empty_moov+default_base_moof";
+    
     private Process ffmpegProcess;
     private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduledExecutor;
     private final BooleanProperty recordingProperty;
     private final BooleanProperty pausedProperty;
     private final StringProperty statusProperty;
+    private final ObjectProperty<FFmpegProgress> progressProperty;
+    private final CoalescingPublisher<String> statusPublisher;
+    private final CoalescingPublisher<FFmpegProgress> progressPublisher;
     private RecordingConfig currentConfig;
+    private SegmentManifest segmentManifest;
+    private final SegmentConcatenator concatenator;
+    private final PostProcessingScheduler postProcessor;
+    private final boolean ownsPostProcessor;
+    private final List<Runnable> sessionEndListeners = new CopyOnWriteArrayList<>();
+    
+    // Encoder threads for the main output, 0 for FFmpeg's default; set by a ResourceGovernor
+    private volatile int encoderThreads;
+    
+    // Current session: one logical recording made of one part per pause/resume cycle
+    private volatile boolean sessionActive;
+    private volatile boolean stopRequested;
+    private volatile Process pausedProcess;
+    private volatile FFmpegProgress lastProgress;
+    private volatile CompletableFuture<Void> monitorFuture;
+    private volatile FrameCapture frameCapture;
+    private volatile FrameCapture lastFrameCapture;
+    private volatile EncoderAutoTuner autoTuner;
+    private volatile Process rolloverProcess;
+    private volatile CompletableFuture<RecordingResult> sessionResult;
+    private volatile SessionJournal journal;
+    private volatile long stopRequestedNanos;
+    private volatile boolean stopForced;
+    private File sessionOutput;
+    
+    // Live preview: set by the UI, picked up when the next part starts
+    private volatile LivePreview livePreview;
+    private volatile LivePreview activePreview;
+    private String sessionBaseName;
+    private final List<File> sessionParts = new ArrayList<>();
+    private long sessionDurationMicros;
+    
+    // Replay buffer: the ring feeding saveReplay() and where clips are written
+    private volatile ReplayBuffer replayBuffer;
+    private File replayOutputDirectory;
     
     public FFmpegService() {
+        this(new PostProcessingScheduler(), true);
+    }
+    
+    /**
+     * Service sharing post-processing with other services, e.g. concurrent sessions
+     *
+     * @param postProcessor scheduler for finished recordings; not shut down by this service
+     */
+    public FFmpegService(PostProcessingScheduler postProcessor) {
+        this(postProcessor, false);
+    }
+    
+    private FFmpegService(PostProcessingScheduler postProcessor, boolean ownsPostProcessor) {
         this.executorService = Executors.newCachedThreadPool();
+        this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.concatenator = new SegmentConcatenator();
+        this.postProcessor = postProcessor;
+        this.ownsPostProcessor = ownsPostProcessor;
         this.recordingProperty = new SimpleBooleanProperty(false);
         this.pausedProperty = new SimpleBooleanProperty(false);
         this.statusProperty = new SimpleStringProperty("Idle");
+        this.progressProperty = new SimpleObjectProperty<>();
+        this.statusPublisher = new CoalescingPublisher<>(statusProperty::set);
+        this.progressPublisher = new CoalescingPublisher<>(progressProperty::set);
     }
     
     /**
      * Check if FFmpeg is available on the system
      */
     public CompletableFuture<Boolean> isFFmpegAvailable() {
+        // Answered from the capability cache; FFmpeg only runs when it was installed or replaced
+        return CompletableFuture.supplyAsync(() -> FFmpegCapabilityProbe.getDefault().getCapabilities().isAvailable(),
+                executorService);
+    }
+    
+    /**
+     * Start recording with the given configuration
+     */
+    public CompletableFuture<Boolean> startRecording(RecordingConfig config) {
+        return startSession(config, null);
+    }
+    
+    /**
+     * Start continuous capture into a ring of short segments so that the last moments
+     * can be saved on demand with {@link #saveReplay(Duration)}
+     *
+     * @param config capture settings; clips are saved to its output directory
+     * @param bufferLength how much recording to keep available
+     */
+    public CompletableFuture<Boolean> startReplayBuffer(RecordingConfig config, Duration bufferLength) {
+        if (recordingProperty.get()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        RecordingConfig ringConfig = config.copy();
+        ringConfig.setOutputDirectory(new File(config.getOutputDirectory(), REPLAY_DIRECTORY_NAME));
+        ringConfig.setSegmentedOutput(true);
+        ringConfig.setSegmentDurationSeconds(REPLAY_SEGMENT_SECONDS);
+        
+        ReplayBuffer buffer = new ReplayBuffer(ringConfig.getOutputDirectory(), bufferLength, REPLAY_SEGMENT_SECONDS);
+        replayOutputDirectory = config.getOutputDirectory();
+        return startSession(ringConfig, buffer);
+    }
+    
+    /**
+     * Save the last part of the replay buffer as a clip, joined with stream copy
+     *
+     * @param length how much recording to include, rounded up to whole segments
+     * @return the saved clip
+     */
+    public CompletableFuture<File> saveReplay(Duration length) {
+        ReplayBuffer buffer = replayBuffer;
+        if (buffer == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Replay buffer is not running"));
+        }
+        
         return CompletableFuture.supplyAsync(() -> {
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+            File clip = new File(replayOutputDirectory, "Replay_" + timestamp + "." + currentConfig.getOutputFormat());
             try {
-                ProcessBuilder pb = new ProcessBuilder("ffmpeg", "-version");
-                Process process = pb.start();
-                int exitCode = process.waitFor();
-                return exitCode == 0;
-            } catch (Exception e) {
-                return false;
+                Duration elapsed = buffer.save(length, clip, concatenator);
+                updateStatus("Replay saved: " + clip.getName() + " (" + elapsed.toMillis() + " ms)");
+                return clip;
+            } catch (IOException e) {
+                updateStatus("Failed to save replay: " + e.getMessage());
+                throw new CompletionException(e);
             }
         }, executorService);
     }
     
     /**
-     * Start recording with the given configuration
+     * Start a recording session, optionally feeding a replay buffer
      */
-    public CompletableFuture<Boolean> startRecording(RecordingConfig config) {
+    private CompletableFuture<Boolean> startSession(RecordingConfig config, ReplayBuffer replay) {
         if (recordingProperty.get()) {
             return CompletableFuture.completedFuture(false);
         }
@@ -63,86 +198,441 @@ public class FFmpegService {
         
         return CompletableFuture.supplyAsync(() -> {
             try {
+                // A new session replaces any previous replay ring
+                discardReplayBuffer();
+                if (replay != null) {
+                    // Clear segments left behind by an earlier run
+                    replay.discard();
+                }
+                
                 // Ensure output directory exists
                 if (!config.getOutputDirectory().exists()) {
                     config.getOutputDirectory().mkdirs();
                 }
                 
-                List<String> command = buildFFmpegCommand(config);
-                
-                // Debug: Print the FFmpeg command
-                System.out.println("FFmpeg command: " + String.join(" ", command));
-                
-                ProcessBuilder pb = new ProcessBuilder(command);
-                pb.redirectErrorStream(true);
+                // A session is one logical recording, made of one part per pause/resume cycle
+                sessionBaseName = config.generateFileName();
+                sessionParts.clear();
+                sessionDurationMicros = 0;
+                sessionOutput = null;
+                sessionResult = new CompletableFuture<>();
+                stopRequested = false;
+                stopRequestedNanos = 0;
+                stopForced = false;
+                pausedProcess = null;
                 
-                // Set working directory
-                pb.directory(config.getOutputDirectory());
-                
-                ffmpegProcess = pb.start();
+                segmentManifest = config.isSegmentedOutput()
+                        ? new SegmentManifest(config.getOutputDirectory(), sessionBaseName, config.getSegmentDurationSeconds())
+                        : null;
+                autoTuner = config.isAutoTuneEncoder()
+                        ? new EncoderAutoTuner(baseProfile(config, segmentManifest), DEFAULT_FRAME_RATE)
+                        : null;
+                if (autoTuner != null && segmentManifest != null) {
+                    // Segment boundaries are where a new process can take the tuned settings
+                    segmentManifest.addSegmentListener(segment -> rolloverIfTuned());
+                }
+                // A replay ring is disposable; everything else is journaled for crash recovery
+                journal = replay == null ? openJournal(config) : null;
+                if (journal != null && segmentManifest != null) {
+                    segmentManifest.addSegmentListener(journal::segmentClosed);
+                }
+                if (replay != null) {
+                    segmentManifest.setRetainedSegments(replay.getCapacity());
+                    segmentManifest.addSegmentListener(replay::onSegmentClosed);
+                    replayBuffer = replay;
+                }
+                if (segmentManifest != null) {
+                    segmentManifest.start(scheduledExecutor);
+                }
                 
-                Platform.runLater(() -> {
-                    recordingProperty.set(true);
-                    statusProperty.set("Recording started...");
-                });
+                sessionActive = true;
+                CaptureActivity.captureStarted();
+                startPart(config);
                 
-                // Monitor FFmpeg output in background
-                monitorFFmpegOutput();
+                Platform.runLater(() -> recordingProperty.set(true));
+                updateStatus("Recording started...");
                 
                 return true;
             } catch (Exception e) {
                 e.printStackTrace(); // Debug: Print full stack trace
-                Platform.runLater(() -> {
-                    statusProperty.set("Error: " + e.getMessage());
-                });
+                if (sessionActive) {
+                    sessionActive = false;
+                    CaptureActivity.captureStopped();
+                }
+                if (segmentManifest != null) {
+                    segmentManifest.stop();
+                }
+                updateStatus("Error: " + e.getMessage());
+                RecordingResult failure = new RecordingResult(false, null, 0, Duration.ZERO, Duration.ZERO, false,
+                        "Error: " + e.getMessage());
+                closeJournal(failure);
+                sessionResult.complete(failure);
+                notifySessionEnded();
                 return false;
             }
         }, executorService);
     }
     
     /**
-     * Stop the current recording
+     * Launch the FFmpeg process for the next part of the current session
      */
-    public void stopRecording() {
-        if (ffmpegProcess != null && ffmpegProcess.isAlive()) {
-            ffmpegProcess.destroy();
-            try {
-                ffmpegProcess.waitFor();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+    private void startPart(RecordingConfig config) throws IOException {
+        File partFile = segmentManifest == null
+                ? new File(config.getOutputDirectory(), sessionBaseName + "_part" + sessionParts.size() + "." + config.getOutputFormat())
+                : null;
+        
+        activePreview = livePreview;
+        List<String> command = buildFFmpegCommand(config, sessionBaseName, partFile, segmentManifest);
+        
+        // Debug: Print the FFmpeg command
+        System.out.println("FFmpeg command: " + String.join(" ", command));
+        
+        // stdout carries -progress data, stderr carries the log
+        ProcessBuilder pb = new ProcessBuilder(command);
+        
+        // Set working directory
+        pb.directory(config.getOutputDirectory());
+        
+        SessionJournal sessionJournal = journal;
+        if (sessionJournal != null && partFile != null) {
+            // Journaled before FFmpeg creates the file, so a crash can never leave it unaccounted for
+            sessionJournal.partStarted(partFile);
         }
         
-        Platform.runLater(() -> {
-            recordingProperty.set(false);
-            pausedProperty.set(false);
-            statusProperty.set("Idle");
-        });
+        lastProgress = null;
+        ffmpegProcess = pb.start();
+        if (partFile != null) {
+            sessionParts.add(partFile);
+        }
+        
+        // Java-side sources feed FFmpeg's stdin with raw frames
+        if (config.getFrameSource() != null) {
+            FrameCapture capture = new FrameCapture(config.getFrameSource(), config.isSkipUnchangedFrames());
+            capture.start(ffmpegProcess.getOutputStream());
+            frameCapture = capture;
+        }
+        
+        // Monitor FFmpeg output in background
+        monitorFuture = monitorFFmpegOutput();
+    }
+    
+    /**
+     * Stop the current recording without blocking the caller. FFmpeg is asked to quit so it can
+     * write the file's index; it is only terminated when it misses the recording.stop.timeout.seconds
+     * deadline, first politely and after a short grace period forcibly.
+     *
+     * @return completes once the output is final, with its path, size, duration and how long
+     *         finishing took; fails with IllegalStateException when nothing is being recorded
+     */
+    public CompletableFuture<RecordingResult> stopRecording() {
+        CompletableFuture<RecordingResult> result = sessionResult;
+        if (!sessionActive || result == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Not recording"));
+        }
+        if (stopRequested) {
+            return result;
+        }
+        stopRequested = true;
+        stopRequestedNanos = System.nanoTime();
+        
+        Process process = ffmpegProcess;
+        if (process != null && process.isAlive()) {
+            // Let FFmpeg finalize the file; the monitor then finishes the session
+            updateStatus("Finishing recording...");
+            requestGracefulExit(process);
+            long timeout = ApplicationProperties.getInt("recording.stop.timeout.seconds", 30);
+            scheduledExecutor.schedule(() -> escalateStop(process), timeout, TimeUnit.SECONDS);
+        } else {
+            // Paused: no process is running, so finish the session here
+            CompletableFuture<Void> previous = monitorFuture;
+            executorService.submit(() -> {
+                if (previous != null) {
+                    previous.join();
+                }
+                finishSession("");
+            });
+        }
+        return result;
     }
     
     /**
-     * Pause/Resume recording (simulate by stopping and restarting)
+     * Terminate an FFmpeg process that did not quit by the stop deadline
+     */
+    private void escalateStop(Process process) {
+        if (!process.isAlive()) {
+            return;
+        }
+        System.err.println("FFmpeg did not finish within the stop deadline, terminating it");
+        stopForced = true;
+        process.destroy();
+        scheduledExecutor.schedule(() -> {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }, STOP_KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Pause/Resume recording. Pausing closes the current part; resuming starts a new one.
+     * All parts are joined losslessly into a single file when the session stops.
      */
     public void togglePause() {
+        if (!sessionActive) {
+            return;
+        }
         boolean isPaused = pausedProperty.get();
         pausedProperty.set(!isPaused);
         
         if (!isPaused) {
-            // Pausing - send 'q' to FFmpeg to stop gracefully
-            if (ffmpegProcess != null && ffmpegProcess.isAlive()) {
+            // Pausing - close the current part gracefully
+            pausedProcess = ffmpegProcess;
+            requestGracefulExit(ffmpegProcess);
+            updateStatus("Pausing...");
+        } else {
+            // Resuming - start the next part once the previous one is finalized
+            CompletableFuture<Void> previous = monitorFuture;
+            executorService.submit(() -> {
                 try {
-                    ffmpegProcess.getOutputStream().write("q\n".getBytes());
-                    ffmpegProcess.getOutputStream().flush();
-                } catch (IOException e) {
-                    // Fallback to destroy
-                    ffmpegProcess.destroy();
+                    if (previous != null) {
+                        previous.join();
+                    }
+                    if (autoTuner != null) {
+                        autoTuner.applyPending();
+                    }
+                    startPart(currentConfig);
+                    updateStatus("Recording resumed");
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    updateStatus("Error resuming: " + e.getMessage());
+                }
+            });
+        }
+    }
+    
+    /**
+     * Restart FFmpeg with the auto-tuner's pending settings. The next part starts only after the
+     * old process has exited and written its last segment, so numbering and the session
+     * playlist continue where they left off.
+     */
+    private void rolloverIfTuned() {
+        EncoderAutoTuner tuner = autoTuner;
+        Process process = ffmpegProcess;
+        if (tuner == null || !tuner.hasPendingChange() || !sessionActive || stopRequested
+                || pausedProperty.get() || process == null || !process.isAlive() || process == rolloverProcess) {
+            return;
+        }
+        
+        rolloverProcess = process;
+        requestGracefulExit(process);
+        CompletableFuture<Void> previous = monitorFuture;
+        executorService.submit(() -> {
+            try {
+                if (previous != null) {
+                    previous.join();
+                }
+                if (stopRequested || !sessionActive) {
+                    return;
                 }
+                tuner.applyPending();
+                startPart(currentConfig);
+                updateStatus("Encoder settings changed to " + tuner.getProfile() + " at " + tuner.getFrameRate() + " fps");
+            } catch (Exception e) {
+                e.printStackTrace();
+                updateStatus("Error applying encoder settings: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Ask FFmpeg to stop by sending 'q', which finalizes the output file.
+     * With a Java frame source stdin carries video, so end of input is signalled by closing it.
+     */
+    private void requestGracefulExit(Process process) {
+        FrameCapture capture = frameCapture;
+        if (capture != null && process == ffmpegProcess) {
+            frameCapture = null;
+            lastFrameCapture = capture;
+            executorService.submit(capture::stop);
+            return;
+        }
+        if (process != null && process.isAlive()) {
+            try {
+                process.getOutputStream().write("q\n".getBytes());
+                process.getOutputStream().flush();
+            } catch (IOException e) {
+                // Fallback to destroy
+                process.destroy();
+            }
+        }
+    }
+    
+    /**
+     * End the session: close the segment manifest or join the recorded parts
+     */
+    private synchronized void finishSession(String errorOutput) {
+        if (!sessionActive) {
+            return;
+        }
+        sessionActive = false;
+        CaptureActivity.captureStopped();
+        
+        String result;
+        File output = null;
+        long sizeBytes = 0;
+        if (replayBuffer != null) {
+            segmentManifest.stop();
+            result = "Replay buffer stopped (" + replayBuffer.getBufferedDuration().toSeconds() + "s available)";
+        } else if (segmentManifest != null) {
+            segmentManifest.stop();
+            result = "Recording completed (" + segmentManifest.getSegmentCount() + " segments)";
+            // The session playlist lists the segments of every part, not just the last one
+            output = segmentManifest.getSegmentCount() > 0 ? segmentManifest.getPlaylistFile() : null;
+            for (SegmentInfo segment : segmentManifest.getSegments()) {
+                sizeBytes += segment.getSizeBytes();
             }
-            Platform.runLater(() -> statusProperty.set("Paused"));
         } else {
-            // Resuming - restart recording
-            if (currentConfig != null) {
-                startRecording(currentConfig);
+            result = stitchParts();
+            output = sessionOutput;
+            sizeBytes = output != null ? output.length() : 0;
+        }
+        
+        Platform.runLater(() -> {
+            recordingProperty.set(false);
+            pausedProperty.set(false);
+        });
+        boolean failed = !errorOutput.trim().isEmpty();
+        String message = failed ? "Recording failed: " + errorOutput.trim() : result;
+        updateStatus(message);
+        
+        Duration finalizeTime = stopRequestedNanos > 0
+                ? Duration.ofNanos(System.nanoTime() - stopRequestedNanos)
+                : Duration.ZERO;
+        RecordingResult recordingResult = new RecordingResult(!failed && (output != null || replayBuffer != null),
+                output, sizeBytes, Duration.ofNanos(sessionDurationMicros * 1000), finalizeTime, stopForced, message);
+        System.out.println(recordingResult);
+        closeJournal(recordingResult);
+        sessionResult.complete(recordingResult);
+        notifySessionEnded();
+    }
+    
+    /**
+     * Start the session's journal; recording goes ahead without one if it cannot be written
+     */
+    private SessionJournal openJournal(RecordingConfig config) {
+        try {
+            return SessionJournal.create(config.getOutputDirectory(), sessionBaseName, config);
+        } catch (IOException e) {
+            System.err.println("Recording without a session journal: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void closeJournal(RecordingResult result) {
+        SessionJournal sessionJournal = journal;
+        journal = null;
+        if (sessionJournal != null) {
+            sessionJournal.stopped(result);
+        }
+    }
+    
+    /**
+     * Run a callback whenever a session ends: stopped, failed or never started
+     */
+    public void addSessionEndListener(Runnable listener) {
+        sessionEndListeners.add(listener);
+    }
+    
+    public void removeSessionEndListener(Runnable listener) {
+        sessionEndListeners.remove(listener);
+    }
+    
+    private void notifySessionEnded() {
+        for (Runnable listener : sessionEndListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                System.err.println("Session end listener failed: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Join the session parts into the final file with stream copy
+     */
+    private String stitchParts() {
+        List<File> parts = new ArrayList<>();
+        for (File part : sessionParts) {
+            if (part.exists() && part.length() > 0) {
+                parts.add(part);
+            }
+        }
+        if (parts.isEmpty()) {
+            return "Recording completed (no output)";
+        }
+        
+        File finalOutput = new File(currentConfig.getOutputDirectory(), sessionBaseName + "." + currentConfig.getOutputFormat());
+        File output = currentConfig.isTwoStageEncoding()
+                ? new File(currentConfig.getOutputDirectory(), sessionBaseName + ".capture." + currentConfig.getOutputFormat())
+                : finalOutput;
+        try {
+            String result;
+            if (parts.size() == 1) {
+                Files.move(parts.get(0).toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                result = "Recording completed";
+            } else {
+                int partCount = parts.size();
+                updateStatus("Joining " + partCount + " parts...");
+                Duration elapsed = concatenator.concat(parts, output, sessionDurationMicros,
+                        fraction -> updateStatus("Joining " + partCount + " parts - " + Math.round(fraction * 100) + "%"));
+                for (File part : parts) {
+                    Files.deleteIfExists(part.toPath());
+                }
+                result = "Recording completed (joined " + partCount + " parts in " + elapsed.toMillis() + " ms)";
+            }
+            stitchProxies(parts, finalOutput);
+            
+            sessionOutput = output;
+            if (output != finalOutput) {
+                schedulePostProcessing(output, EncoderProfile.delivery(), finalOutput);
+                result += ", transcoding in background";
+            } else {
+                schedulePostProcessing(output, null, null);
+            }
+            return result;
+        } catch (IOException e) {
+            System.err.println("Failed to join recording parts: " + e.getMessage());
+            return "Recording saved as " + parts.size() + " parts (join failed: " + e.getMessage() + ")";
+        }
+    }
+    
+    /**
+     * Join the proxy renditions written next to each part, named after the final recording
+     */
+    private void stitchProxies(List<File> parts, File finalOutput) {
+        for (Resolution proxy : RenditionLadder.proxiesFor(currentConfig.getResolution(), currentConfig.getProxyResolutions())) {
+            List<File> proxyParts = new ArrayList<>();
+            for (File part : parts) {
+                File proxyPart = RenditionLadder.proxyFile(part, proxy);
+                if (proxyPart.exists() && proxyPart.length() > 0) {
+                    proxyParts.add(proxyPart);
+                }
+            }
+            if (proxyParts.isEmpty()) {
+                continue;
+            }
+            
+            File proxyOutput = RenditionLadder.proxyFile(finalOutput, proxy);
+            try {
+                if (proxyParts.size() == 1) {
+                    Files.move(proxyParts.get(0).toPath(), proxyOutput.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    concatenator.concat(proxyParts, proxyOutput, sessionDurationMicros, null);
+                    for (File proxyPart : proxyParts) {
+                        Files.deleteIfExists(proxyPart.toPath());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to join " + proxy.getName() + " proxy parts: " + e.getMessage());
             }
         }
     }
@@ -150,13 +640,22 @@ public class FFmpegService {
     /**
      * Build FFmpeg command based on configuration
      */
-    private List<String> buildFFmpegCommand(RecordingConfig config) {
+    private List<String> buildFFmpegCommand(RecordingConfig config, String baseName, File outputFile,
+                                            SegmentManifest manifest) {
         List<String> command = new ArrayList<>();
         command.add("ffmpeg");
         command.add("-y"); // Overwrite output files
         
+        // Machine-readable progress instead of the stats line; stdout is taken by preview frames
+        // when a preview is shown, so progress then shares stderr with the log
+        command.add("-progress");
+        command.add(activePreview != null ? "pipe:2" : "pipe:1");
+        command.add("-nostats");
+        
         // Video input - always add video source first
-        if (config.getVideoSource() != null) {
+        if (config.getFrameSource() != null) {
+            command.addAll(FrameCapture.inputArguments(config.getFrameSource(), config.isSkipUnchangedFrames()));
+        } else if (config.getVideoSource() != null) {
             switch (config.getVideoSource().getType()) {
                 case FULL_SCREEN -> addScreenCaptureArgs(command);
                 case WINDOW -> addWindowCaptureArgs(command, config);
@@ -184,13 +683,25 @@ public class FFmpegService {
         }
         */
         
-        // Video encoding settings
-        command.add("-c:v");
-        command.add("libx264");
-        command.add("-preset");
-        command.add("fast");
-        command.add("-crf");
-        command.add("23");
+        // Proxy renditions come from the same capture via a split filter; single-file sessions only
+        List<Resolution> proxies = RenditionLadder.proxiesFor(config.getResolution(), config.getProxyResolutions());
+        if (manifest != null && !proxies.isEmpty()) {
+            System.err.println("Proxy renditions are not supported with segmented output and were ignored");
+            proxies = List.of();
+        }
+        
+        // FFmpeg captures the screen itself when skipping unchanged frames, so let it drop the duplicates
+        String decimate = config.isSkipUnchangedFrames() && config.getFrameSource() == null ? "mpdecimate" : null;
+        if (!proxies.isEmpty()) {
+            command.add("-filter_complex");
+            command.add(RenditionLadder.filterGraph(config.getResolution(), proxies, decimate));
+        }
+        
+        // Video encoding settings, as tuned to the machine when auto-tuning
+        EncoderAutoTuner tuner = autoTuner;
+        EncoderProfile profile = tuner != null ? tuner.getProfile() : baseProfile(config, manifest);
+        // Fastest encoder this machine can actually run, e.g. NVENC instead of libx264
+        profile = FFmpegCapabilityProbe.getDefault().forCapture(profile);
         
         // Audio encoding settings (only if recording audio)
         // Disabled for now until audio recording is fixed
@@ -203,26 +714,157 @@ public class FFmpegService {
         }
         */
         
-        // Frame rate
-        command.add("-r");
-        command.add("30");
-        
-        // Output resolution (if specified)
-        if (config.getResolution() != null) {
-            command.add("-s");
-            command.add(config.getResolution().getResolutionString());
-        }
+        // Frame rate - constant, or only the frames that changed
+        List<String> rateArguments = config.isSkipUnchangedFrames()
+                ? List.of("-fps_mode", "vfr")
+                : List.of("-r", String.valueOf(captureFrameRate()));
         
         // Duration limit (remove for continuous recording)
         // command.add("-t");
         // command.add("3600"); // 1 hour max
         
-        // Output file
-        command.add(config.getVideoOutputFile().getAbsolutePath());
+        // Governed sessions keep to their share of the cores; proxies get one thread each
+        List<String> threadArguments = encoderThreads > 0
+                ? List.of("-threads", String.valueOf(encoderThreads))
+                : List.of();
+        
+        // Fragmented MP4 for single-file sessions; segments are already small, complete files
+        boolean fragmented = manifest == null && isFragmentable(config);
+        String fragmentDuration = String.valueOf(config.getFragmentDurationMillis() * 1000L);
+        List<String> fragmentArguments = fragmented
+                ? List.of("-movflags", FRAGMENT_MOVFLAGS, "-frag_duration", fragmentDuration)
+                : List.of();
+        List<String> teeFileOptions = fragmented
+                ? List.of("movflags=" + FRAGMENT_MOVFLAGS, "frag_duration=" + fragmentDuration)
+                : List.of();
+        
+        if (proxies.isEmpty()) {
+            command.addAll(profile.toArguments());
+            command.addAll(threadArguments);
+            if (decimate != null) {
+                command.add("-vf");
+                command.add(decimate);
+            }
+            command.addAll(rateArguments);
+            
+            // Output resolution (if specified)
+            if (config.getResolution() != null) {
+                command.add("-s");
+                command.add(config.getResolution().getResolutionString());
+            }
+            
+            // Output file(s)
+            if (manifest != null) {
+                if (!config.getStreamTargets().isEmpty()) {
+                    System.err.println("Stream targets are not supported with segmented output and were ignored");
+                }
+                addSegmentOutputArgs(command, config, baseName, manifest);
+            } else if (!config.getStreamTargets().isEmpty()) {
+                // Encode once, write the file and every stream from the same packets
+                command.addAll(TeeOutput.arguments("0:v", outputFile, config.getOutputFormat(), teeFileOptions,
+                        config.getStreamTargets()));
+            } else {
+                command.addAll(fragmentArguments);
+                command.add(outputFile.getAbsolutePath());
+            }
+        } else {
+            // Main rendition, scaled in the filter graph
+            command.addAll(profile.toArguments());
+            command.addAll(threadArguments);
+            command.addAll(rateArguments);
+            if (!config.getStreamTargets().isEmpty()) {
+                command.addAll(TeeOutput.arguments(RenditionLadder.label(0), outputFile,
+                        config.getOutputFormat(), teeFileOptions, config.getStreamTargets()));
+            } else {
+                command.add("-map");
+                command.add(RenditionLadder.label(0));
+                command.addAll(fragmentArguments);
+                command.add(outputFile.getAbsolutePath());
+            }
+            
+            // One output per proxy, always at delivery-ready proxy settings
+            EncoderProfile proxyProfile = FFmpegCapabilityProbe.getDefault().forCapture(EncoderProfile.proxy());
+            for (int i = 0; i < proxies.size(); i++) {
+                command.add("-map");
+                command.add(RenditionLadder.label(i + 1));
+                command.addAll(proxyProfile.toArguments());
+                if (encoderThreads > 0) {
+                    command.add("-threads");
+                    command.add("1");
+                }
+                command.addAll(rateArguments);
+                command.addAll(fragmentArguments);
+                command.add(RenditionLadder.proxyFile(outputFile, proxies.get(i)).getAbsolutePath());
+            }
+        }
+        
+        // Low-resolution raw copy of the same capture for the live preview
+        if (activePreview != null) {
+            command.addAll(activePreview.outputArguments());
+        }
         
         return command;
     }
     
+    /**
+     * Configured encoder settings - two-stage single-file sessions capture cheaply and transcode later
+     */
+    private EncoderProfile baseProfile(RecordingConfig config, SegmentManifest manifest) {
+        return config.isTwoStageEncoding() && manifest == null
+                ? EncoderProfile.capture()
+                : EncoderProfile.delivery();
+    }
+    
+    /**
+     * Whether the output container supports fragments
+     */
+    private static boolean isFragmentable(RecordingConfig config) {
+        String format = config.getOutputFormat();
+        return config.isFragmentedOutput() && ("mp4".equalsIgnoreCase(format) || "mov".equalsIgnoreCase(format));
+    }
+    
+    private int captureFrameRate() {
+        EncoderAutoTuner tuner = autoTuner;
+        return tuner != null ? tuner.getFrameRate() : DEFAULT_FRAME_RATE;
+    }
+    
+    /**
+     * Add segment muxer arguments: rolling files plus this part's M3U8 list, rewritten on every segment close
+     */
+    private void addSegmentOutputArgs(List<String> command, RecordingConfig config, String baseName,
+                                      SegmentManifest manifest) {
+        String segmentTime = String.valueOf(config.getSegmentDurationSeconds());
+        // Picks up the previous part's last segments first, so numbering continues after them
+        // instead of overwriting the last one
+        File segmentList = manifest.beginPart();
+        
+        // Keyframe on every boundary so segments are cut exactly and play independently
+        command.add("-force_key_frames");
+        command.add("expr:gte(t,n_forced*" + segmentTime + ")");
+        
+        command.add("-f");
+        command.add("segment");
+        command.add("-segment_time");
+        command.add(segmentTime);
+        command.add("-segment_format");
+        command.add(config.getOutputFormat());
+        command.add("-reset_timestamps");
+        command.add("1");
+        command.add("-segment_start_number");
+        command.add(String.valueOf(manifest.getSegmentCount()));
+        if (manifest.getRetainedSegments() > 0) {
+            command.add("-segment_list_size");
+            command.add(String.valueOf(manifest.getRetainedSegments()));
+        }
+        command.add("-segment_list");
+        command.add(segmentList.getAbsolutePath());
+        command.add("-segment_list_type");
+        command.add("m3u8");
+        command.add("-segment_list_flags");
+        command.add("+live");
+        command.add(new File(config.getOutputDirectory(), baseName + "_%05d." + config.getOutputFormat()).getAbsolutePath());
+    }
+    
     /**
      * Add screen capture arguments for Windows
      */
@@ -231,7 +873,7 @@ public class FFmpegService {
         command.add("-f");
         command.add("gdigrab");
         command.add("-framerate");
-        command.add("30");
+        command.add(String.valueOf(captureFrameRate()));
         command.add("-i");
         command.add("desktop");
     }
@@ -244,7 +886,7 @@ public class FFmpegService {
         command.add("-f");
         command.add("gdigrab");
         command.add("-framerate");
-        command.add("30");
+        command.add(String.valueOf(captureFrameRate()));
         command.add("-i");
         command.add("title=" + config.getVideoSource().getIdentifier());
     }
@@ -289,91 +931,215 @@ public class FFmpegService {
     }
     
     /**
-     * Monitor FFmpeg output for errors and progress
+     * Monitor FFmpeg progress and log output: progress on stdout and log on stderr, or with a
+     * live preview, preview frames on stdout and progress interleaved with the log on stderr
      */
-    private void monitorFFmpegOutput() {
-        executorService.submit(() -> {
+    private CompletableFuture<Void> monitorFFmpegOutput() {
+        final Process process = ffmpegProcess;
+        final LivePreview preview = activePreview;
+        final File partFile = segmentManifest == null && !sessionParts.isEmpty()
+                ? sessionParts.get(sessionParts.size() - 1)
+                : null;
+        final StringBuilder errorOutput = new StringBuilder();
+        
+        CompletableFuture<Void> secondaryReader = CompletableFuture.runAsync(() -> {
+            if (preview != null) {
+                try (InputStream frames = process.getInputStream()) {
+                    preview.readFrames(frames);
+                } catch (IOException e) {
+                    System.err.println("Error reading preview frames: " + e.getMessage());
+                }
+                System.out.println(preview.getStatistics());
+                return;
+            }
             try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(ffmpegProcess.getInputStream()))) {
-                
+                    new InputStreamReader(process.getErrorStream()))) {
                 String line;
-                final boolean[] hasError = {false};
-                StringBuilder errorOutput = new StringBuilder();
-                
                 while ((line = reader.readLine()) != null) {
-                    final String outputLine = line;
-                    
-                    // Debug: Print all FFmpeg output
-                    System.out.println("FFmpeg: " + outputLine);
-                    
-                    // Check for errors
-                    if (outputLine.toLowerCase().contains("error") || 
-                        outputLine.toLowerCase().contains("failed") ||
-                        outputLine.toLowerCase().contains("invalid")) {
-                        hasError[0] = true;
-                        errorOutput.append(outputLine).append("\n");
+                    handleLogLine(line, errorOutput);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading FFmpeg log: " + e.getMessage());
+            }
+        }, executorService);
+        
+        return CompletableFuture.runAsync(() -> {
+            try (InputStream progressStream = preview != null ? process.getErrorStream() : process.getInputStream()) {
+                FFmpegProgressParser parser = new FFmpegProgressParser();
+                final long[] lastDropFrames = {0};
+                
+                parser.parse(progressStream, progress -> {
+                    lastProgress = progress;
+                    EncoderAutoTuner tuner = autoTuner;
+                    if (tuner != null) {
+                        tuner.onProgress(progress);
                     }
-                    
-                    Platform.runLater(() -> {
-                        // Parse FFmpeg output for progress, errors, etc.
-                        if (outputLine.contains("time=")) {
-                            // Extract time information for progress
-                            String timeInfo = extractTimeInfo(outputLine);
-                            if (!timeInfo.isEmpty()) {
-                                statusProperty.set("Recording - " + timeInfo);
-                            }
-                        } else if (outputLine.contains("frame=")) {
-                            // Show frame information
-                            statusProperty.set("Recording - " + outputLine.trim());
-                        } else if (hasError[0]) {
-                            statusProperty.set("Error: " + outputLine);
-                        }
-                    });
+                    if (progress.getDropFrames() > lastDropFrames[0]) {
+                        System.out.println("FFmpeg dropped " + (progress.getDropFrames() - lastDropFrames[0])
+                                + " frame(s), total " + progress.getDropFrames());
+                        lastDropFrames[0] = progress.getDropFrames();
+                    }
+                    progressPublisher.publish(progress);
+                    updateStatus(formatProgressStatus(progress));
+                }, preview != null ? line -> handleLogLine(line, errorOutput) : null);
+                
+                // Process ended - wait for the log reader so no error line is missed
+                process.waitFor();
+                secondaryReader.join();
+                
+                SessionJournal sessionJournal = journal;
+                if (sessionJournal != null && partFile != null && process.exitValue() == 0) {
+                    // FFmpeg wrote the index, so this part needs no repair after a crash
+                    sessionJournal.partClosed(partFile);
                 }
                 
-                // Process ended
-                final boolean finalHasError = hasError[0];
-                final String finalErrorOutput = errorOutput.toString();
+                FFmpegProgress partProgress = lastProgress;
+                if (partProgress != null) {
+                    sessionDurationMicros += partProgress.getOutTimeMicros();
+                }
                 
-                Platform.runLater(() -> {
-                    recordingProperty.set(false);
-                    pausedProperty.set(false);
-                    if (finalHasError && !finalErrorOutput.trim().isEmpty()) {
-                        statusProperty.set("Recording failed: " + finalErrorOutput.trim());
-                    } else {
-                        statusProperty.set("Recording completed");
-                    }
-                });
+                final String finalErrorOutput;
+                synchronized (errorOutput) {
+                    finalErrorOutput = errorOutput.toString();
+                }
+                
+                if (process == pausedProcess && !stopRequested) {
+                    // Part closed by a pause - the session continues on resume
+                    updateStatus("Paused");
+                } else if (process == rolloverProcess && !stopRequested) {
+                    // Part closed to apply tuned encoder settings - the next one is starting
+                    updateStatus("Applying encoder settings...");
+                } else {
+                    finishSession(finalErrorOutput);
+                }
                 
             } catch (IOException e) {
                 e.printStackTrace(); // Debug: Print full stack trace
-                Platform.runLater(() -> {
-                    recordingProperty.set(false);
-                    statusProperty.set("Error reading FFmpeg output: " + e.getMessage());
-                });
+                finishSession("Error reading FFmpeg output: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        });
+        }, executorService);
+    }
+    
+    private static void handleLogLine(String line, StringBuilder errorOutput) {
+        // Debug: Print all FFmpeg log output
+        System.out.println("FFmpeg: " + line);
+        
+        if (isErrorLine(line)) {
+            synchronized (errorOutput) {
+                errorOutput.append(line).append("\n");
+            }
+        }
+    }
+    
+    /**
+     * Check a log line for error markers without allocating lower-case copies
+     */
+    private static boolean isErrorLine(String line) {
+        return containsIgnoreCase(line, "error")
+                || containsIgnoreCase(line, "failed")
+                || containsIgnoreCase(line, "invalid");
+    }
+    
+    private static boolean containsIgnoreCase(String text, String token) {
+        int max = text.length() - token.length();
+        for (int i = 0; i <= max; i++) {
+            if (text.regionMatches(true, i, token, 0, token.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Build the status line shown for a progress snapshot
+     */
+    private static String formatProgressStatus(FFmpegProgress progress) {
+        StringBuilder status = new StringBuilder("Recording - ").append(progress.getFormattedOutTime());
+        if (progress.getFps() > 0) {
+            status.append(" @ ").append(Math.round(progress.getFps())).append(" fps");
+        }
+        if (progress.getDropFrames() > 0) {
+            status.append(" (").append(progress.getDropFrames()).append(" dropped)");
+        }
+        return status.toString();
     }
     
     /**
-     * Extract time information from FFmpeg output
+     * Queue the post-processing pipeline of a finished recording
+     *
+     * @param transcodeProfile re-encode into finalOutput with these settings, or null to remux only
      */
-    private String extractTimeInfo(String line) {
-        int timeIndex = line.indexOf("time=");
-        if (timeIndex != -1) {
-            int endIndex = line.indexOf(" ", timeIndex + 5);
-            if (endIndex == -1) endIndex = line.length();
-            return line.substring(timeIndex + 5, endIndex);
+    private void schedulePostProcessing(File recording, EncoderProfile transcodeProfile, File finalOutput) {
+        try {
+            List<PostProcessingJob> pipeline = postProcessor.schedulePipeline(recording, sessionDurationMicros,
+                    transcodeProfile, finalOutput);
+            pipeline.get(0).getResult().whenComplete((file, error) -> {
+                if (error != null) {
+                    updateStatus("Post-processing failed, recording kept as " + recording.getName());
+                } else if (!recordingProperty.get()) {
+                    updateStatus("Post-processing completed: " + file.getName());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down - the recording is kept as-is
+            System.err.println("Post-processing not queued, recording kept as " + recording.getName());
         }
-        return "";
+    }
+    
+    /**
+     * Number of post-processing jobs queued or running
+     */
+    public int getPendingPostProcessingJobs() {
+        return postProcessor.getPendingCount();
+    }
+    
+    public PostProcessingScheduler getPostProcessingScheduler() {
+        return postProcessor;
+    }
+    
+    /**
+     * Delete the segments of the previous replay buffer, if any
+     */
+    private void discardReplayBuffer() {
+        ReplayBuffer previous = replayBuffer;
+        replayBuffer = null;
+        if (previous != null) {
+            previous.discard();
+        }
+    }
+    
+    /**
+     * Queue a status update; bursts are coalesced to the latest value per UI pulse
+     */
+    private void updateStatus(String status) {
+        statusPublisher.publish(status);
+    }
+    
+    /**
+     * Number of status/progress updates that were superseded before reaching the UI
+     */
+    public long getDroppedUiUpdates() {
+        return statusPublisher.getDroppedCount() + progressPublisher.getDroppedCount();
     }
     
     /**
      * Shutdown the service
      */
     public void shutdown() {
-        stopRecording();
-        executorService.shutdown();
+        CompletableFuture<RecordingResult> stopping = sessionActive
+                ? stopRecording()
+                : CompletableFuture.completedFuture(null);
+        // Release the threads only after the recording is final
+        stopping.whenComplete((result, error) -> {
+            discardReplayBuffer();
+            executorService.shutdown();
+            if (ownsPostProcessor) {
+                postProcessor.shutdown();
+            }
+            scheduledExecutor.shutdown();
+        });
     }
     
     // Property getters
@@ -388,4 +1154,65 @@ public class FFmpegService {
     public StringProperty statusProperty() {
         return statusProperty;
     }
+    
+    public ObjectProperty<FFmpegProgress> progressProperty() {
+        return progressProperty;
+    }
+    
+    /**
+     * Limit the main encoder to this many threads, or 0 for FFmpeg's default.
+     * Takes effect when the next recording (or part) starts.
+     */
+    public void setEncoderThreads(int encoderThreads) {
+        this.encoderThreads = encoderThreads;
+    }
+    
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+    
+    /**
+     * Show a live preview from the recording process, or null for none.
+     * Takes effect when the next recording (or part) starts.
+     *
+     * The desktop UI records through OBS and feeds its preview from
+     * {@link OBSPortableRecordingService#startPreview}; this path is only used by callers that
+     * drive FFmpegService directly, such as {@link RecordingSessionRegistry} clients.
+     */
+    public void setLivePreview(LivePreview livePreview) {
+        this.livePreview = livePreview;
+    }
+    
+    public LivePreview getLivePreview() {
+        return livePreview;
+    }
+    
+    /**
+     * The Java-side capture of the current part, or null when FFmpeg captures the screen itself
+     */
+    public FrameCapture getFrameCapture() {
+        return frameCapture;
+    }
+    
+    /**
+     * The last Java-side capture that was stopped, for its frame, drop and queue counters;
+     * null if none has run
+     */
+    public FrameCapture getLastFrameCapture() {
+        return lastFrameCapture;
+    }
+    
+    /**
+     * Auto-tuner of the current session, or null when auto-tuning is off
+     */
+    public EncoderAutoTuner getAutoTuner() {
+        return autoTuner;
+    }
+    
+    /**
+     * Segment tracker of the current recording, or null when not recording in segmented mode
+     */
+    public SegmentManifest getSegmentManifest() {
+        return segmentManifest;
+    }
 }
@@ -0,0 +1,225 @@
+package com.screenrecorder.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+import com.screenrecorder.util.ApplicationProperties;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Live preview fed with raw BGRA frames, shown through JavaFX PixelBuffers.
+ *
+ * Two direct buffers back two images: the front one is on screen, the back one receives the
+ * newest frame. The FX pulse swaps them when a new frame is complete and only marks the new
+ * front dirty, so the only copy is the one from the intake buffer and nothing is allocated
+ * per frame. Frames arriving faster than the pulse simply overwrite the back buffer; the
+ * producer is never blocked, which matters when it is the FFmpeg process doing the recording.
+ */
+public class LivePreview {
+    private final int width;
+    private final int height;
+    private final int maxFps;
+    private final ByteBuffer intake;
+    private final ByteBuffer[] buffers = new ByteBuffer[2];
+    private final PixelBuffer<IntBuffer>[] pixelBuffers;
+    private final WritableImage[] images = new WritableImage[2];
+    private final Object swapLock = new Object();
+
+    // Guarded by swapLock
+    private int frontIndex;
+    private boolean frameReady;
+
+    private ImageView view;
+    private AnimationTimer pulse;
+    private final BooleanProperty showingProperty = new SimpleBooleanProperty(false);
+
+    private volatile long receivedFrames;
+    private volatile long displayedFrames;
+    private volatile long busyNanos;
+    private volatile long startedNanos;
+
+    /**
+     * Size from preview.width, keeping the aspect ratio of the recording, capped at preview.fps
+     */
+    public static LivePreview forRecording(int sourceWidth, int sourceHeight) {
+        int width = ApplicationProperties.getInt("preview.width", 320);
+        // Even height, as scalers and encoders expect
+        int height = Math.max(2, (int) Math.round((double) width * sourceHeight / sourceWidth / 2) * 2);
+        return new LivePreview(width, height, ApplicationProperties.getInt("preview.fps", 10));
+    }
+
+    @SuppressWarnings("unchecked")
+    public LivePreview(int width, int height, int maxFps) {
+        this.width = width;
+        this.height = height;
+        this.maxFps = maxFps;
+        this.intake = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+        this.pixelBuffers = new PixelBuffer[2];
+        for (int i = 0; i < 2; i++) {
+            // BGRA bytes read as native little-endian ints are the ARGB values JavaFX expects
+            buffers[i] = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+            pixelBuffers[i] = new PixelBuffer<>(width, height, buffers[i].asIntBuffer(),
+                    PixelFormat.getIntArgbPreInstance());
+            images[i] = new WritableImage(pixelBuffers[i]);
+        }
+    }
+
+    /**
+     * FFmpeg options for a second, preview-sized raw output on stdout. The fps filter caps the
+     * rate at the source, so skipped frames are never scaled or piped.
+     */
+    public List<String> outputArguments() {
+        return List.of(
+                "-map", "0:v",
+                "-vf", "fps=" + maxFps + ",scale=" + width + ":" + height,
+                "-pix_fmt", "bgra",
+                "-c:v", "rawvideo",
+                "-f", "rawvideo",
+                "pipe:1");
+    }
+
+    /**
+     * Show the preview in the given view; call on the FX thread
+     */
+    public void attach(ImageView imageView) {
+        detach();
+        this.view = imageView;
+        imageView.setImage(images[frontIndex]);
+        startedNanos = System.nanoTime();
+        pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                swapIfReady();
+            }
+        };
+        pulse.start();
+    }
+
+    /**
+     * Stop updating the view; call on the FX thread
+     */
+    public void detach() {
+        if (pulse != null) {
+            pulse.stop();
+            pulse = null;
+        }
+        view = null;
+    }
+
+    /**
+     * Read frames from the stream until it ends. Blocks; run on a worker thread.
+     */
+    public void readFrames(InputStream in) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(in);
+        startedNanos = System.nanoTime();
+        while (true) {
+            intake.clear();
+            while (intake.hasRemaining()) {
+                if (channel.read(intake) < 0) {
+                    return;
+                }
+            }
+            intake.flip();
+            submitFrame(intake);
+        }
+    }
+
+    /**
+     * Offer a complete BGRA frame of this preview's size; the newest frame wins
+     *
+     * @param frame read from its position; left unchanged
+     */
+    public void submitFrame(ByteBuffer frame) {
+        long started = System.nanoTime();
+        synchronized (swapLock) {
+            ByteBuffer back = buffers[frontIndex ^ 1];
+            back.clear();
+            back.put(frame.duplicate());
+            frameReady = true;
+        }
+        receivedFrames++;
+        busyNanos += System.nanoTime() - started;
+    }
+
+    private void swapIfReady() {
+        long started = System.nanoTime();
+        int shown;
+        synchronized (swapLock) {
+            if (!frameReady) {
+                return;
+            }
+            frontIndex ^= 1;
+            frameReady = false;
+            shown = frontIndex;
+        }
+        // Whole-frame update of the image being put on screen; the old front becomes the back
+        pixelBuffers[shown].updateBuffer(buffer -> null);
+        if (view != null) {
+            view.setImage(images[shown]);
+        }
+        if (displayedFrames++ == 0) {
+            showingProperty.set(true);
+        }
+        busyNanos += System.nanoTime() - started;
+    }
+
+    /**
+     * True once a frame has been shown
+     */
+    public BooleanProperty showingProperty() {
+        return showingProperty;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxFps() {
+        return maxFps;
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames;
+    }
+
+    public long getDisplayedFrames() {
+        return displayedFrames;
+    }
+
+    /**
+     * Milliseconds of Java-side work (frame copy and texture update) per second of preview.
+     * FFmpeg's scaling for the preview output is not included.
+     */
+    public double getOverheadMillisPerSecond() {
+        long elapsed = System.nanoTime() - startedNanos;
+        if (startedNanos == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return busyNanos / 1_000_000.0 / (elapsed / 1_000_000_000.0);
+    }
+
+    /**
+     * One-line summary for logs
+     */
+    public String getStatistics() {
+        return String.format("Preview %dx%d: %d frames received, %d shown, %.2f ms/s overhead",
+                width, height, receivedFrames, displayedFrames, getOverheadMillisPerSecond());
+    }
+}
@@ -0,0 +1,828 @@
+package com.screenrecorder.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Rewrites a fragmented MP4 (empty moov, then moof/mdat pairs) into a regular MP4 with the
+ * index in front, without FFmpeg.
+ *
+ * Only the small moof boxes are parsed; the media data is copied chunk by chunk with
+ * {@link FileChannel#transferTo}, so the cost is one sequential read and write of the file.
+ * A fragment that runs past the end of the file, as left by a crash, is dropped together with
+ * everything after it, so a damaged recording is recovered up to its last complete fragment.
+ */
+public class Mp4Defragmenter {
+    // tfhd flags
+    private static final int TFHD_BASE_DATA_OFFSET = 0x1;
+    private static final int TFHD_SAMPLE_DESCRIPTION_INDEX = 0x2;
+    private static final int TFHD_DEFAULT_DURATION = 0x8;
+    private static final int TFHD_DEFAULT_SIZE = 0x10;
+    private static final int TFHD_DEFAULT_FLAGS = 0x20;
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x20000;
+    // trun flags
+    private static final int TRUN_DATA_OFFSET = 0x1;
+    private static final int TRUN_FIRST_SAMPLE_FLAGS = 0x4;
+    private static final int TRUN_DURATION = 0x100;
+    private static final int TRUN_SIZE = 0x200;
+    private static final int TRUN_FLAGS = 0x400;
+    private static final int TRUN_COMPOSITION_OFFSET = 0x800;
+    // sample flags
+    private static final int SAMPLE_IS_NON_SYNC = 0x10000;
+
+    private static final int MAX_HEADER_BOX_SIZE = 64 * 1024 * 1024;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Whether the file is a fragmented MP4, i.e. its moov announces fragments with an mvex box
+     */
+    public static boolean isFragmented(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            long size = channel.size();
+            while (position + 8 <= size) {
+                BoxHeader header = readHeader(channel, position, size);
+                if (header == null) {
+                    return false;
+                }
+                if (header.type.equals("moov")) {
+                    ByteBuffer moov = readBox(channel, header);
+                    return findChild(moov, "mvex") != null;
+                }
+                position = header.end;
+            }
+        } catch (IOException e) {
+            // Not readable as MP4
+        }
+        return false;
+    }
+
+    /**
+     * Stop a running {@link #defragment}; it then throws InterruptedException
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Write a regular faststart MP4 with the samples of every complete fragment
+     *
+     * @param progressListener receives values between 0 and 1, may be null
+     * @return how long the rewrite took
+     * @throws IOException when the input is not a fragmented MP4 or holds no complete fragment
+     */
+    public Duration defragment(File input, File output, DoubleConsumer progressListener)
+            throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            long fileSize = in.size();
+            ByteBuffer ftyp = null;
+            ByteBuffer moov = null;
+            Map<Integer, Track> tracks = new LinkedHashMap<>();
+            List<Chunk> chunks = new ArrayList<>();
+            boolean truncated = false;
+
+            long position = 0;
+            while (position + 8 <= fileSize) {
+                BoxHeader header = readHeader(in, position, fileSize);
+                if (header == null) {
+                    truncated = true;
+                    break;
+                }
+                switch (header.type) {
+                    case "ftyp" -> ftyp = readBox(in, header);
+                    case "moov" -> {
+                        moov = readBox(in, header);
+                        readTracks(moov, tracks);
+                    }
+                    case "moof" -> {
+                        if (moov == null) {
+                            throw new IOException("Fragment before moov in " + input.getName());
+                        }
+                        if (!readFragment(readBox(in, header), header.start, fileSize, tracks, chunks)) {
+                            truncated = true;
+                        }
+                    }
+                    default -> {
+                        // mdat is copied through the chunk list; sidx, mfra, free and others are dropped
+                    }
+                }
+                if (truncated) {
+                    break;
+                }
+                position = header.end;
+            }
+
+            if (moov == null || findChild(moov, "mvex") == null) {
+                throw new IOException(input.getName() + " is not a fragmented MP4");
+            }
+            if (chunks.isEmpty()) {
+                throw new IOException(input.getName() + " holds no complete fragment");
+            }
+            if (truncated) {
+                System.err.println(input.getName() + " ends in an incomplete fragment; keeping "
+                        + chunks.size() + " complete runs");
+            }
+
+            writeProgressive(in, output, ftyp, moov, tracks, chunks, progressListener);
+        }
+        return Duration.ofNanos(System.nanoTime() - started);
+    }
+
+    private void writeProgressive(FileChannel in, File output, ByteBuffer ftyp, ByteBuffer moov,
+                                  Map<Integer, Track> tracks, List<Chunk> chunks, DoubleConsumer progressListener)
+            throws IOException, InterruptedException {
+        long mediaBytes = 0;
+        for (Chunk chunk : chunks) {
+            chunk.outputOffset = mediaBytes;
+            mediaBytes += chunk.length;
+        }
+        byte[] ftypBytes = ftyp != null ? toArray(ftyp) : new byte[0];
+        boolean largeMdat = mediaBytes + 8 > 0xFFFFFFFFL;
+        int mdatHeaderSize = largeMdat ? 16 : 8;
+
+        // The moov size does not depend on the offset values, only on their width
+        boolean wideOffsets = false;
+        byte[] sizingMoov = buildMoov(moov, tracks, 0, false);
+        long mediaStart = ftypBytes.length + (long) sizingMoov.length + mdatHeaderSize;
+        if (mediaStart + mediaBytes > 0xFFFFFFFFL) {
+            wideOffsets = true;
+            sizingMoov = buildMoov(moov, tracks, 0, true);
+            mediaStart = ftypBytes.length + (long) sizingMoov.length + mdatHeaderSize;
+        }
+        byte[] moovBytes = buildMoov(moov, tracks, mediaStart, wideOffsets);
+
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(ftypBytes));
+            writeFully(out, ByteBuffer.wrap(moovBytes));
+            ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+            if (largeMdat) {
+                mdatHeader.putInt(1).put(type("mdat")).putLong(mediaBytes + 16);
+            } else {
+                mdatHeader.putInt((int) (mediaBytes + 8)).put(type("mdat"));
+            }
+            mdatHeader.flip();
+            writeFully(out, mdatHeader);
+
+            long copied = 0;
+            int index = 0;
+            while (index < chunks.size()) {
+                if (cancelled) {
+                    throw new InterruptedException("Defragment cancelled");
+                }
+                // Fragments are usually laid out back to back, so copy adjacent runs in one go
+                long start = chunks.get(index).sourceOffset;
+                long end = start + chunks.get(index).length;
+                index++;
+                while (index < chunks.size() && chunks.get(index).sourceOffset == end) {
+                    end += chunks.get(index).length;
+                    index++;
+                }
+                long remaining = end - start;
+                while (remaining > 0) {
+                    long transferred = in.transferTo(end - remaining, remaining, out);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of input while copying media data");
+                    }
+                    remaining -= transferred;
+                }
+                copied += end - start;
+                if (progressListener != null) {
+                    progressListener.accept((double) copied / Math.max(1, mediaBytes));
+                }
+            }
+        }
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Track IDs, timescales and trex defaults from the initial moov
+     */
+    private static void readTracks(ByteBuffer moov, Map<Integer, Track> tracks) {
+        for (ByteBuffer trak : findChildren(moov, "trak")) {
+            ByteBuffer tkhd = findChild(trak, "tkhd");
+            ByteBuffer mdhd = findPath(trak, "mdia", "mdhd");
+            if (tkhd == null || mdhd == null) {
+                continue;
+            }
+            Track track = new Track();
+            int version = tkhd.get(tkhd.position()) & 0xFF;
+            track.id = tkhd.getInt(tkhd.position() + (version == 1 ? 20 : 12));
+            int mdhdVersion = mdhd.get(mdhd.position()) & 0xFF;
+            track.timescale = mdhd.getInt(mdhd.position() + (mdhdVersion == 1 ? 20 : 12)) & 0xFFFFFFFFL;
+            tracks.put(track.id, track);
+        }
+        ByteBuffer mvex = findChild(moov, "mvex");
+        if (mvex != null) {
+            for (ByteBuffer trex : findChildren(mvex, "trex")) {
+                int base = trex.position();
+                Track track = tracks.get(trex.getInt(base + 4));
+                if (track != null) {
+                    track.defaultDescriptionIndex = trex.getInt(base + 8);
+                    track.defaultDuration = trex.getInt(base + 12);
+                    track.defaultSize = trex.getInt(base + 16);
+                    track.defaultFlags = trex.getInt(base + 20);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add one moof's samples to the tracks, or nothing when its data is not all in the file
+     *
+     * @return false when the fragment is incomplete
+     */
+    private static boolean readFragment(ByteBuffer moof, long moofStart, long fileSize,
+                                        Map<Integer, Track> tracks, List<Chunk> chunks) throws IOException {
+        List<Run> runs = new ArrayList<>();
+        long previousDataEnd = moofStart;
+
+        for (ByteBuffer traf : findChildren(moof, "traf")) {
+            ByteBuffer tfhd = findChild(traf, "tfhd");
+            if (tfhd == null) {
+                throw new IOException("traf without tfhd");
+            }
+            int tfhdFlags = tfhd.getInt() & 0xFFFFFF;
+            Track track = tracks.get(tfhd.getInt());
+            if (track == null) {
+                continue;
+            }
+            long base;
+            if ((tfhdFlags & TFHD_BASE_DATA_OFFSET) != 0) {
+                base = tfhd.getLong();
+            } else if ((tfhdFlags & TFHD_DEFAULT_BASE_IS_MOOF) != 0) {
+                base = moofStart;
+            } else {
+                base = previousDataEnd;
+            }
+            int descriptionIndex = (tfhdFlags & TFHD_SAMPLE_DESCRIPTION_INDEX) != 0 ? tfhd.getInt() : track.defaultDescriptionIndex;
+            int defaultDuration = (tfhdFlags & TFHD_DEFAULT_DURATION) != 0 ? tfhd.getInt() : track.defaultDuration;
+            int defaultSize = (tfhdFlags & TFHD_DEFAULT_SIZE) != 0 ? tfhd.getInt() : track.defaultSize;
+            int defaultFlags = (tfhdFlags & TFHD_DEFAULT_FLAGS) != 0 ? tfhd.getInt() : track.defaultFlags;
+
+            long dataPosition = base;
+            for (ByteBuffer trun : findChildren(traf, "trun")) {
+                int flags = trun.getInt() & 0xFFFFFF;
+                int sampleCount = trun.getInt();
+                if ((flags & TRUN_DATA_OFFSET) != 0) {
+                    dataPosition = base + trun.getInt();
+                }
+                int firstSampleFlags = (flags & TRUN_FIRST_SAMPLE_FLAGS) != 0 ? trun.getInt() : defaultFlags;
+
+                Run run = new Run(track, sampleCount, descriptionIndex, dataPosition);
+                for (int i = 0; i < sampleCount; i++) {
+                    int duration = (flags & TRUN_DURATION) != 0 ? trun.getInt() : defaultDuration;
+                    int size = (flags & TRUN_SIZE) != 0 ? trun.getInt() : defaultSize;
+                    int sampleFlags = (flags & TRUN_FLAGS) != 0 ? trun.getInt()
+                            : i == 0 ? firstSampleFlags : defaultFlags;
+                    // Unsigned in version 0, signed in version 1; real offsets fit either way
+                    int compositionOffset = (flags & TRUN_COMPOSITION_OFFSET) != 0 ? trun.getInt() : 0;
+                    run.durations[i] = duration;
+                    run.sizes[i] = size;
+                    run.sync[i] = (sampleFlags & SAMPLE_IS_NON_SYNC) == 0;
+                    run.compositionOffsets[i] = compositionOffset;
+                    run.length += size & 0xFFFFFFFFL;
+                }
+                if (run.dataOffset + run.length > fileSize) {
+                    return false;
+                }
+                runs.add(run);
+                dataPosition = run.dataOffset + run.length;
+            }
+            previousDataEnd = dataPosition;
+        }
+
+        // Complete - commit
+        for (Run run : runs) {
+            if (run.sampleCount == 0) {
+                continue;
+            }
+            Track track = run.track;
+            Chunk chunk = new Chunk(run.dataOffset, run.length);
+            chunks.add(chunk);
+            track.chunkSamples.add(run.sampleCount);
+            track.chunkDescriptions.add(run.descriptionIndex);
+            track.chunks.add(chunk);
+            for (int i = 0; i < run.sampleCount; i++) {
+                track.sampleCount++;
+                track.durations.add(run.durations[i]);
+                track.sizes.add(run.sizes[i]);
+                track.compositionOffsets.add(run.compositionOffsets[i]);
+                if (run.compositionOffsets[i] != 0) {
+                    track.hasCompositionOffsets = true;
+                }
+                if (run.sync[i]) {
+                    track.syncSamples.add(track.sampleCount);
+                }
+                track.mediaDuration += run.durations[i] & 0xFFFFFFFFL;
+            }
+        }
+        return true;
+    }
+
+    // ---- Writing ----
+
+    /**
+     * The initial moov with mvex removed, full sample tables and real durations
+     */
+    private static byte[] buildMoov(ByteBuffer moov, Map<Integer, Track> tracks, long mediaStart, boolean wideOffsets)
+            throws IOException {
+        ByteBuffer mvhd = findChild(moov, "mvhd");
+        if (mvhd == null) {
+            throw new IOException("moov without mvhd");
+        }
+        int mvhdVersion = mvhd.get(mvhd.position()) & 0xFF;
+        long movieTimescale = mvhd.getInt(mvhd.position() + (mvhdVersion == 1 ? 20 : 12)) & 0xFFFFFFFFL;
+        long movieDuration = 0;
+        for (Track track : tracks.values()) {
+            track.movieDuration = track.timescale > 0 ? track.mediaDuration * movieTimescale / track.timescale : 0;
+            movieDuration = Math.max(movieDuration, track.movieDuration);
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (ByteBuffer child : children(moov)) {
+            String type = boxType(child);
+            switch (type) {
+                case "mvex" -> {
+                    // Nothing follows any more
+                }
+                case "mvhd" -> payload.write(withDuration(child, movieDuration, mvhdVersion == 1 ? 24 : 16, mvhdVersion == 1));
+                case "trak" -> payload.write(buildTrak(child, tracks, mediaStart, wideOffsets, movieDuration));
+                default -> payload.write(toArray(child));
+            }
+        }
+        return box("moov", payload.toByteArray());
+    }
+
+    private static byte[] buildTrak(ByteBuffer trak, Map<Integer, Track> tracks, long mediaStart, boolean wideOffsets,
+                                    long movieDuration) throws IOException {
+        ByteBuffer tkhd = findChild(trak, "tkhd");
+        int tkhdVersion = tkhd.get(tkhd.position()) & 0xFF;
+        Track track = tracks.get(tkhd.getInt(tkhd.position() + (tkhdVersion == 1 ? 20 : 12)));
+        if (track == null) {
+            return toArray(trak);
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (ByteBuffer child : children(trak)) {
+            switch (boxType(child)) {
+                case "tkhd" -> payload.write(withDuration(child, track.movieDuration, tkhdVersion == 1 ? 28 : 20, tkhdVersion == 1));
+                case "edts" -> payload.write(buildEdts(child, track.movieDuration));
+                case "mdia" -> payload.write(buildMdia(child, track, mediaStart, wideOffsets));
+                default -> payload.write(toArray(child));
+            }
+        }
+        return box("trak", payload.toByteArray());
+    }
+
+    /**
+     * Edit lists written before the duration was known say 0; give them the real length
+     */
+    private static byte[] buildEdts(ByteBuffer edts, long trackMovieDuration) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (ByteBuffer child : children(edts)) {
+            byte[] bytes = toArray(child);
+            if (boxType(child).equals("elst")) {
+                ByteBuffer elst = ByteBuffer.wrap(bytes);
+                int header = headerSize(elst);
+                int version = elst.get(header) & 0xFF;
+                int count = elst.getInt(header + 4);
+                int entry = header + 8;
+                for (int i = 0; i < count && entry + (version == 1 ? 20 : 12) <= bytes.length; i++) {
+                    if (version == 1 && elst.getLong(entry) == 0) {
+                        elst.putLong(entry, trackMovieDuration);
+                    } else if (version == 0 && elst.getInt(entry) == 0) {
+                        elst.putInt(entry, (int) Math.min(0xFFFFFFFFL, trackMovieDuration));
+                    }
+                    entry += version == 1 ? 20 : 12;
+                }
+            }
+            payload.write(bytes);
+        }
+        return box("edts", payload.toByteArray());
+    }
+
+    private static byte[] buildMdia(ByteBuffer mdia, Track track, long mediaStart, boolean wideOffsets) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (ByteBuffer child : children(mdia)) {
+            switch (boxType(child)) {
+                case "mdhd" -> {
+                    boolean version1 = (child.get(child.position()) & 0xFF) == 1;
+                    payload.write(withDuration(child, track.mediaDuration, version1 ? 24 : 16, version1));
+                }
+                case "minf" -> payload.write(buildMinf(child, track, mediaStart, wideOffsets));
+                default -> payload.write(toArray(child));
+            }
+        }
+        return box("mdia", payload.toByteArray());
+    }
+
+    private static byte[] buildMinf(ByteBuffer minf, Track track, long mediaStart, boolean wideOffsets) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (ByteBuffer child : children(minf)) {
+            if (boxType(child).equals("stbl")) {
+                payload.write(buildStbl(child, track, mediaStart, wideOffsets));
+            } else {
+                payload.write(toArray(child));
+            }
+        }
+        return box("minf", payload.toByteArray());
+    }
+
+    private static byte[] buildStbl(ByteBuffer stbl, Track track, long mediaStart, boolean wideOffsets) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        ByteBuffer stsd = findChild(stbl, "stsd");
+        if (stsd == null) {
+            throw new IOException("stbl without stsd");
+        }
+        payload.write(toArray(stsd));
+        payload.write(buildStts(track));
+        if (track.hasCompositionOffsets) {
+            payload.write(buildCtts(track));
+        }
+        if (track.syncSamples.size() < track.sampleCount) {
+            payload.write(buildStss(track));
+        }
+        payload.write(buildStsc(track));
+        payload.write(buildStsz(track));
+        payload.write(buildChunkOffsets(track, mediaStart, wideOffsets));
+        return box("stbl", payload.toByteArray());
+    }
+
+    private static byte[] buildStts(Track track) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        int count = 0;
+        int i = 0;
+        while (i < track.sampleCount) {
+            int delta = track.durations.get(i);
+            int run = 1;
+            while (i + run < track.sampleCount && track.durations.get(i + run) == delta) {
+                run++;
+            }
+            data.writeInt(run);
+            data.writeInt(delta);
+            count++;
+            i += run;
+        }
+        return fullBox("stts", 0, count, entries.toByteArray());
+    }
+
+    private static byte[] buildCtts(Track track) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        boolean negative = false;
+        int count = 0;
+        int i = 0;
+        while (i < track.sampleCount) {
+            int offset = track.compositionOffsets.get(i);
+            negative |= offset < 0;
+            int run = 1;
+            while (i + run < track.sampleCount && track.compositionOffsets.get(i + run) == offset) {
+                run++;
+            }
+            data.writeInt(run);
+            data.writeInt(offset);
+            count++;
+            i += run;
+        }
+        return fullBox("ctts", negative ? 1 : 0, count, entries.toByteArray());
+    }
+
+    private static byte[] buildStss(Track track) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        for (int i = 0; i < track.syncSamples.size(); i++) {
+            data.writeInt(track.syncSamples.get(i));
+        }
+        return fullBox("stss", 0, track.syncSamples.size(), entries.toByteArray());
+    }
+
+    private static byte[] buildStsc(Track track) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        int count = 0;
+        for (int i = 0; i < track.chunkSamples.size(); i++) {
+            int samples = track.chunkSamples.get(i);
+            int description = track.chunkDescriptions.get(i);
+            if (i == 0 || samples != track.chunkSamples.get(i - 1) || description != track.chunkDescriptions.get(i - 1)) {
+                data.writeInt(i + 1);
+                data.writeInt(samples);
+                data.writeInt(description);
+                count++;
+            }
+        }
+        return fullBox("stsc", 0, count, entries.toByteArray());
+    }
+
+    private static byte[] buildStsz(Track track) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        boolean constant = true;
+        for (int i = 1; i < track.sampleCount && constant; i++) {
+            constant = track.sizes.get(i) == track.sizes.get(0);
+        }
+        data.writeInt(0);
+        data.writeInt(constant ? track.sizes.get(0) : 0);
+        data.writeInt(track.sampleCount);
+        if (!constant) {
+            for (int i = 0; i < track.sampleCount; i++) {
+                data.writeInt(track.sizes.get(i));
+            }
+        }
+        return box("stsz", payload.toByteArray());
+    }
+
+    private static byte[] buildChunkOffsets(Track track, long mediaStart, boolean wide) throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        for (Chunk chunk : track.chunks) {
+            long offset = mediaStart + chunk.outputOffset;
+            if (wide) {
+                data.writeLong(offset);
+            } else {
+                data.writeInt((int) offset);
+            }
+        }
+        return fullBox(wide ? "co64" : "stco", 0, track.chunks.size(), entries.toByteArray());
+    }
+
+    /**
+     * Copy of a full box with the duration field at the given payload offset replaced
+     */
+    private static byte[] withDuration(ByteBuffer source, long duration, int offset, boolean wide) {
+        byte[] bytes = toArray(source);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int position = headerSize(buffer) + offset;
+        if (wide) {
+            buffer.putLong(position, duration);
+        } else {
+            buffer.putInt(position, (int) Math.min(0xFFFFFFFFL, duration));
+        }
+        return bytes;
+    }
+
+    private static byte[] fullBox(String type, int version, int entryCount, byte[] entries) {
+        ByteBuffer payload = ByteBuffer.allocate(8 + entries.length);
+        payload.putInt(version << 24).putInt(entryCount).put(entries);
+        return box(type, payload.array());
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        ByteBuffer box = ByteBuffer.allocate(8 + payload.length);
+        box.putInt(8 + payload.length).put(type(type)).put(payload);
+        return box.array();
+    }
+
+    // ---- Box access ----
+
+    private static final class BoxHeader {
+        final String type;
+        final long start;
+        final int headerSize;
+        final long end;
+
+        BoxHeader(String type, long start, int headerSize, long end) {
+            this.type = type;
+            this.start = start;
+            this.headerSize = headerSize;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Top-level box header, or null when the box does not fit in the file
+     */
+    private static BoxHeader readHeader(FileChannel channel, long position, long fileSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.limit((int) Math.min(16, fileSize - position));
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                break;
+            }
+        }
+        if (header.position() < 8) {
+            return null;
+        }
+        long size = header.getInt(0) & 0xFFFFFFFFL;
+        String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+        int headerSize = 8;
+        if (size == 1) {
+            if (header.position() < 16) {
+                return null;
+            }
+            size = header.getLong(8);
+            headerSize = 16;
+        } else if (size == 0) {
+            size = fileSize - position;
+        }
+        if (size < headerSize || position + size > fileSize) {
+            return null;
+        }
+        return new BoxHeader(type, position, headerSize, position + size);
+    }
+
+    /**
+     * Whole box in its own buffer, positioned at its payload
+     */
+    private static ByteBuffer readBox(FileChannel channel, BoxHeader header) throws IOException {
+        long size = header.end - header.start;
+        if (size > MAX_HEADER_BOX_SIZE) {
+            throw new IOException(header.type + " box too large (" + size + " bytes)");
+        }
+        ByteBuffer box = ByteBuffer.allocate((int) size);
+        while (box.hasRemaining()) {
+            if (channel.read(box, header.start + box.position()) < 0) {
+                throw new IOException("Unexpected end of file in " + header.type);
+            }
+        }
+        box.position(header.headerSize);
+        return box;
+    }
+
+    /**
+     * Child boxes of a container positioned at its payload. Each child is its own buffer starting
+     * at the child's header and positioned at its payload.
+     */
+    private static List<ByteBuffer> children(ByteBuffer container) {
+        List<ByteBuffer> result = new ArrayList<>();
+        int position = container.position();
+        int limit = container.limit();
+        while (position + 8 <= limit) {
+            long size = container.getInt(position) & 0xFFFFFFFFL;
+            int headerSize = 8;
+            if (size == 1 && position + 16 <= limit) {
+                size = container.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = limit - position;
+            }
+            if (size < headerSize || position + size > limit) {
+                break;
+            }
+            ByteBuffer child = container.slice(position, (int) size);
+            child.position(headerSize);
+            result.add(child);
+            position += (int) size;
+        }
+        return result;
+    }
+
+    private static List<ByteBuffer> findChildren(ByteBuffer container, String type) {
+        List<ByteBuffer> result = new ArrayList<>();
+        for (ByteBuffer child : children(container)) {
+            if (boxType(child).equals(type)) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    private static ByteBuffer findChild(ByteBuffer container, String type) {
+        for (ByteBuffer child : children(container)) {
+            if (boxType(child).equals(type)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static ByteBuffer findPath(ByteBuffer container, String... types) {
+        ByteBuffer current = container;
+        for (String type : types) {
+            current = findChild(current, type);
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Header size of a box buffer: 16 when it carries a 64-bit size, otherwise 8
+     */
+    private static int headerSize(ByteBuffer box) {
+        return box.getInt(0) == 1 ? 16 : 8;
+    }
+
+    private static String boxType(ByteBuffer box) {
+        byte[] type = new byte[4];
+        box.get(4, type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The whole box including its header
+     */
+    private static byte[] toArray(ByteBuffer box) {
+        byte[] bytes = new byte[box.limit()];
+        box.get(0, bytes);
+        return bytes;
+    }
+
+    private static byte[] type(String type) {
+        return type.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // ---- Sample tables ----
+
+    private static final class Track {
+        int id;
+        long timescale;
+        int defaultDescriptionIndex = 1;
+        int defaultDuration;
+        int defaultSize;
+        int defaultFlags;
+
+        int sampleCount;
+        long mediaDuration;
+        long movieDuration;
+        boolean hasCompositionOffsets;
+        final IntArray durations = new IntArray();
+        final IntArray sizes = new IntArray();
+        final IntArray compositionOffsets = new IntArray();
+        final IntArray syncSamples = new IntArray();
+        final IntArray chunkSamples = new IntArray();
+        final IntArray chunkDescriptions = new IntArray();
+        final List<Chunk> chunks = new ArrayList<>();
+    }
+
+    /**
+     * One trun's samples, contiguous in the input and in the output
+     */
+    private static final class Chunk {
+        final long sourceOffset;
+        final long length;
+        long outputOffset;
+
+        Chunk(long sourceOffset, long length) {
+            this.sourceOffset = sourceOffset;
+            this.length = length;
+        }
+    }
+
+    private static final class Run {
+        final Track track;
+        final int sampleCount;
+        final int descriptionIndex;
+        final long dataOffset;
+        final int[] durations;
+        final int[] sizes;
+        final boolean[] sync;
+        final int[] compositionOffsets;
+        long length;
+
+        Run(Track track, int sampleCount, int descriptionIndex, long dataOffset) {
+            this.track = track;
+            this.sampleCount = sampleCount;
+            this.descriptionIndex = descriptionIndex;
+            this.dataOffset = dataOffset;
+            this.durations = new int[sampleCount];
+            this.sizes = new int[sampleCount];
+            this.sync = new boolean[sampleCount];
+            this.compositionOffsets = new int[sampleCount];
+        }
+    }
+
+    private static final class IntArray {
+        private int[] values = new int[256];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
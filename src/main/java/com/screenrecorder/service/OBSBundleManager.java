@@ -25,6 +25,7 @@ public class OBSBundleManager {
     private final Path obsInstallDir;
     private final Path obsExecutable;
     private Process obsProcess;
+    private volatile long obsLaunchedNanos;
 
     public OBSBundleManager() {
         this.applicationDir = getApplicationDirectory();
@@ -128,11 +129,10 @@ public class OBSBundleManager {
 
                 pb.directory(obsInstallDir.resolve("bin").resolve("64bit").toFile());
 
+                obsLaunchedNanos = System.nanoTime();
                 obsProcess = pb.start();
 
-                // Wait for OBS to start
-                Thread.sleep(8000);
-
+                // Readiness is detected by the caller; see OBSReadinessDetector
                 if (obsProcess.isAlive()) {
                     System.out.println("Bundled OBS Studio started successfully");
                     return true;
@@ -155,6 +155,20 @@ public class OBSBundleManager {
         gracefulShutdown();
     }
 
+    /**
+     * Whether the OBS process started by this manager is still running; cheap enough to poll
+     */
+    public boolean isBundledOBSAlive() {
+        return obsProcess != null && obsProcess.isAlive();
+    }
+
+    /**
+     * System.nanoTime() at which the bundled OBS was last launched, 0 if never
+     */
+    public long getOBSLaunchedNanos() {
+        return obsLaunchedNanos;
+    }
+
     public boolean isOBSRunning() {
         try {
             ProcessBuilder pb = new ProcessBuilder("tasklist", "/FI", "IMAGENAME eq obs64.exe");
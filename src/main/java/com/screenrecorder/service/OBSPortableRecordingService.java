@@ -1,28 +1,27 @@
 package com.screenrecorder.service;
 
 import com.screenrecorder.model.RecordingConfig;
+import com.screenrecorder.util.CoalescingPublisher;
+import com.screenrecorder.util.LatencyHistogram;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Enhanced OBS Recording Service that works with bundled OBS Studio
@@ -30,6 +29,11 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class OBSPortableRecordingService {
     
+    private static final Set<String> RECORD_COMMANDS = Set.of("StartRecord", "StopRecord", "PauseRecord", "ResumeRecord");
+    /** Shutdown, scene and recording events, pushed by OBS instead of polled */
+    private static final int EVENT_SUBSCRIPTIONS =
+            OBSRpcClient.EVENTS_GENERAL | OBSRpcClient.EVENTS_SCENES | OBSRpcClient.EVENTS_OUTPUTS;
+    
     private final ExecutorService executorService;
     private final ScheduledExecutorService scheduledExecutor;
     private final BooleanProperty recordingProperty;
@@ -37,6 +41,7 @@ public class OBSPortableRecordingService {
     private final StringProperty statusProperty;
     private final BooleanProperty obsConnectedProperty;
     private final BooleanProperty obsBundledProperty;
+    private final CoalescingPublisher<String> statusPublisher;
     
     private final OBSBundleManager bundleManager;
     
@@ -50,14 +55,19 @@ public class OBSPortableRecordingService {
     private String currentRecordingId;
     private RecordingConfig currentConfig;
     
-    private WebSocketClient wsClient;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicInteger messageId = new AtomicInteger(1);
+    private final OBSRpcClient rpcClient;
+    private final OBSReadinessDetector readinessDetector;
+    private final OBSRecordState recordState = new OBSRecordState();
+    private volatile Consumer<List<?>> volumeMeterListener;
+    private final CaptureActivity.Registration capture = CaptureActivity.newRegistration();
+    private OBSPreviewFeed previewFeed;
     
     public OBSPortableRecordingService() {
         this.executorService = Executors.newCachedThreadPool();
         this.scheduledExecutor = Executors.newScheduledThreadPool(2);
         this.bundleManager = new OBSBundleManager();
+        this.rpcClient = new OBSRpcClient(obsWebSocketHost, obsWebSocketPort, obsWebSocketPassword);
+        this.readinessDetector = new OBSReadinessDetector(obsWebSocketHost, obsWebSocketPort, rpcClient);
         
         // Initialize properties
         this.recordingProperty = new SimpleBooleanProperty(false);
@@ -65,9 +75,27 @@ public class OBSPortableRecordingService {
         this.statusProperty = new SimpleStringProperty("Not Connected");
         this.obsConnectedProperty = new SimpleBooleanProperty(false);
         this.obsBundledProperty = new SimpleBooleanProperty(bundleManager.isOBSBundled());
+        this.statusPublisher = new CoalescingPublisher<>(statusProperty::set);
         
-        // Start monitoring OBS connection
-//        startConnectionMonitoring();
+        // OBS pushes recording, scene and shutdown events
+        rpcClient.setEventSubscriptions(EVENT_SUBSCRIPTIONS);
+        rpcClient.addEventListener("RecordStateChanged", this::onRecordStateChanged);
+        rpcClient.addEventListener("CurrentProgramSceneChanged", this::onProgramSceneChanged);
+        // Only delivered while a volume meter listener has opted in to the subscription
+        rpcClient.addEventListener("InputVolumeMeters", this::onVolumeMeters);
+        rpcClient.addEventListener("ExitStarted", data -> onOBSGone("OBS Studio is shutting down"));
+        rpcClient.addConnectionListener(connected -> {
+            Platform.runLater(() -> obsConnectedProperty.set(connected));
+            if (connected) {
+                resyncRecordState();
+                refreshPreviewScene();
+            } else if (!bundleManager.isBundledOBSAlive() && isInitialized) {
+                onOBSGone("OBS Studio exited");
+            } else if (isInitialized) {
+                // OBS keeps recording through a dropped connection; the state is re-read on reconnect
+                updateStatus("Lost connection to OBS, reconnecting");
+            }
+        });
     }
     
     /**
@@ -99,7 +127,8 @@ public class OBSPortableRecordingService {
 
                 // Wait for OBS to be ready and connect
                 updateStatus("Connecting to OBS...");
-                boolean connected = waitForOBSConnection(30); // Wait up to 30 seconds
+                boolean connected = readinessDetector.awaitReady(bundleManager::isBundledOBSAlive,
+                        bundleManager.getOBSLaunchedNanos(), Duration.ofSeconds(30)) != null;
 
                 if (connected) {
                     updateStatus("OBS Ready");
@@ -149,6 +178,7 @@ public class OBSPortableRecordingService {
                 // Start recording via WebSocket API
                 boolean started = sendOBSCommand("StartRecord");
                 if (started) {
+                    capture.setActive(true);
                     Platform.runLater(() -> {
                         recordingProperty.set(true);
                         pausedProperty.set(false);
@@ -183,6 +213,7 @@ public class OBSPortableRecordingService {
                 
                 boolean stopped = sendOBSCommand("StopRecord");
                 if (stopped) {
+                    capture.setActive(false);
                     Platform.runLater(() -> {
                         recordingProperty.set(false);
                         pausedProperty.set(false);
@@ -275,6 +306,9 @@ public class OBSPortableRecordingService {
                 stopRecording().get(5, TimeUnit.SECONDS);
             }
             
+            stopPreview();
+            rpcClient.close();
+            
             // Stop bundled OBS
             bundleManager.stopBundledOBS();
             
@@ -289,6 +323,42 @@ public class OBSPortableRecordingService {
         }
     }
     
+    /**
+     * Receive OBS's input levels (the "inputs" array of InputVolumeMeters, about 20 times a
+     * second). The high-volume subscription is only active while a listener is set.
+     */
+    public synchronized void setVolumeMeterListener(Consumer<List<?>> listener) {
+        boolean subscribed = volumeMeterListener != null;
+        volumeMeterListener = listener;
+        if (subscribed == (listener != null)) {
+            return;
+        }
+        rpcClient.setEventSubscriptions(listener != null
+                ? EVENT_SUBSCRIPTIONS | OBSRpcClient.EVENTS_INPUT_VOLUME_METERS
+                : EVENT_SUBSCRIPTIONS);
+    }
+    
+    private void onVolumeMeters(Map<?, ?> eventData) {
+        Consumer<List<?>> listener = volumeMeterListener;
+        if (listener != null && eventData.get("inputs") instanceof List<?> inputs) {
+            listener.accept(inputs);
+        }
+    }
+    
+    /**
+     * File OBS is recording to, or saved last, as reported by OBS
+     */
+    public String getRecordingOutputPath() {
+        return recordState.getOutputPath();
+    }
+    
+    /**
+     * Recorded time so far, pauses excluded, tracked from OBS's state events
+     */
+    public Duration getRecordingElapsed() {
+        return recordState.getElapsed();
+    }
+    
     // Property getters
     public BooleanProperty recordingProperty() { return recordingProperty; }
     public BooleanProperty pausedProperty() { return pausedProperty; }
@@ -298,291 +368,204 @@ public class OBSPortableRecordingService {
     
     // Private helper methods
     
-    private void startConnectionMonitoring() {
-        scheduledExecutor.scheduleWithFixedDelay(() -> {
-            try {
-                boolean wasConnected = obsConnectedProperty.get();
-                boolean isConnected = testOBSConnection();
-                
-                if (wasConnected != isConnected) {
-                    Platform.runLater(() -> obsConnectedProperty.set(isConnected));
-                    if (isConnected) {
-                        updateStatus("Connected to OBS");
-                    } else {
-                        updateStatus("Lost connection to OBS");
-                        Platform.runLater(() -> recordingProperty.set(false));
-                    }
-                }
-            } catch (Exception e) {
-                // Ignore monitoring errors
-            }
-        }, 2, 5, TimeUnit.SECONDS);
+    /**
+     * Follow OBS's own view of the recording, including starts and stops made in OBS itself
+     */
+    private void onRecordStateChanged(Map<?, ?> eventData) {
+        publishRecordState(recordState.onRecordStateChanged(eventData));
     }
     
-    private boolean waitForOBSConnection(int timeoutSeconds) {
-        System.out.println("Waiting for OBS WebSocket connection (timeout: " + timeoutSeconds + "s)...");
-        for (int i = 0; i < timeoutSeconds; i++) {
-            if (testOBSConnection()) {
-                System.out.println("OBS WebSocket connection established after " + (i + 1) + " seconds");
-                return true;
-            }
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return false;
+    private void resyncRecordState() {
+        rpcClient.start();
+        recordState.resync(rpcClient).thenAccept(changed -> {
+            if (changed) {
+                publishRecordState(recordState.getState());
+            } else if (isInitialized) {
+                updateStatus(recordState.isActive() ? "Reconnected to OBS, still recording" : "OBS Ready");
             }
-        }
-        System.out.println("Timeout: Failed to connect to OBS WebSocket after " + timeoutSeconds + " seconds");
-        return false;
+        });
     }
     
-    private boolean testOBSConnection() {
-        // First try socket connection (faster and more reliable)
-        if (testWebSocketConnection()) {
-            return true;
+    private void publishRecordState(OBSRecordState.State state) {
+        boolean active = recordState.isActive();
+        boolean paused = recordState.isPaused();
+        capture.setActive(active);
+        Platform.runLater(() -> {
+            recordingProperty.set(active);
+            pausedProperty.set(paused);
+        });
+        if (state == OBSRecordState.State.RECORDING && recordState.getOutputPath() != null) {
+            updateStatus("Recording to " + recordState.getOutputPath());
+        } else if (state == OBSRecordState.State.STOPPED && recordState.getOutputPath() != null) {
+            updateStatus("Recording saved to " + recordState.getOutputPath());
         }
-        
-        // Fallback to HTTP test
-        try {
-            HttpClient client = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(5))
-                .build();
-            
-            // Test WebSocket endpoint - OBS WebSocket server responds to HTTP requests
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://" + obsWebSocketHost + ":" + obsWebSocketPort))
-                .timeout(Duration.ofSeconds(5))
-                .header("User-Agent", "ChubbyRecorder/1.0")
-                .build();
-            
-            HttpResponse<String> response = client.send(request, 
-                HttpResponse.BodyHandlers.ofString());
-            
-            // OBS WebSocket server returns various codes when running:
-            // 404 - WebSocket endpoint not found (but server is running)
-            // 400 - Bad request (but server is running)
-            // 426 - Upgrade required (WebSocket server is running)
-            return response.statusCode() == 404 || 
-                   response.statusCode() == 400 || 
-                   response.statusCode() == 426;
-            
-        } catch (java.net.ConnectException e) {
-            // Connection refused - server not running
-            System.out.println("OBS WebSocket server not responding: " + e.getMessage());
-            return false;
-        } catch (Exception e) {
-            System.out.println("Error testing OBS connection: " + e.getMessage());
-            return false;
+    }
+    
+    /**
+     * OBS is exiting or has exited; any recording it was making has ended
+     */
+    private void onOBSGone(String reason) {
+        boolean wasRecording = recordState.isActive();
+        recordState.reset();
+        capture.setActive(false);
+        Platform.runLater(() -> {
+            obsConnectedProperty.set(false);
+            recordingProperty.set(false);
+            pausedProperty.set(false);
+        });
+        if (wasRecording || isInitialized) {
+            updateStatus(reason);
         }
     }
     
     /**
-     * Alternative method to test WebSocket connection using actual WebSocket protocol
+     * Send a request and complete with its responseData (empty when the request has none).
+     * Requests are pipelined over the long-lived session and queued while it reconnects, so
+     * no request waits for a handshake of its own; fails with {@link OBSRequestException}.
      */
-    private boolean testWebSocketConnection() {
-        try {
-            // Try to connect via WebSocket protocol
-            java.net.Socket socket = new java.net.Socket();
-            socket.connect(new java.net.InetSocketAddress(obsWebSocketHost, obsWebSocketPort), 3000);
-            
-            // If we can connect, the port is open
-            socket.close();
-            System.out.println("OBS WebSocket port " + obsWebSocketPort + " is accessible");
-            return true;
-            
-        } catch (Exception e) {
-            System.out.println("OBS WebSocket port " + obsWebSocketPort + " is not accessible: " + e.getMessage());
-            return false;
+    CompletableFuture<Map<?, ?>> sendRequest(String requestType, Map<String, Object> requestData) {
+        rpcClient.start();
+        return rpcClient.request(requestType, requestData);
+    }
+    
+    /**
+     * Response times of the OBS requests sent so far, by request type
+     */
+    public Map<String, LatencyHistogram> getRequestLatencies() {
+        return rpcClient.getLatencies();
+    }
+    
+    /**
+     * Time from launching OBS until it accepted the session; null until OBS has been ready
+     */
+    public Duration getTimeToReady() {
+        return readinessDetector.getTimeToReady();
+    }
+    
+    /**
+     * Feed the preview with throttled OBS screenshots of the program scene
+     */
+    public synchronized void startPreview(LivePreview preview) {
+        stopPreview();
+        previewFeed = new OBSPreviewFeed(this::sendRequest, preview);
+        previewFeed.start();
+    }
+    
+    private synchronized void onProgramSceneChanged(Map<?, ?> eventData) {
+        if (previewFeed != null) {
+            previewFeed.onProgramSceneChanged(eventData);
         }
     }
     
-    private boolean connectWebSocket() {
-        try {
-            if (wsClient != null && wsClient.isOpen()) return true;
-            final Object lock = new Object();
-            final boolean[] identified = {false};
-            wsClient = new WebSocketClient(new URI("ws://" + obsWebSocketHost + ":" + obsWebSocketPort)) {
-                @Override
-                public void onOpen(ServerHandshake handshakedata) {
-                    System.out.println("OBS WebSocket connected");
-                    // Send Identify
-                    try {
-                        Map<String, Object> identify = Map.of(
-                            "op", 1,
-                            "d", Map.of("rpcVersion", 1)
-                        );
-                        wsClient.send(objectMapper.writeValueAsString(identify));
-                    } catch (Exception e) {
-                        System.err.println("Failed to send Identify: " + e.getMessage());
-                    }
-                }
-                @Override
-                public void onMessage(String message) {
-                    try {
-                        Map<?,?> msg = objectMapper.readValue(message, Map.class);
-                        if (msg.get("op") instanceof Number && ((Number)msg.get("op")).intValue() == 2) {
-                            synchronized(lock) {
-                                identified[0] = true;
-                                lock.notifyAll();
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Ignore
-                    }
-                }
-                @Override
-                public void onClose(int code, String reason, boolean remote) {
-                    System.out.println("OBS WebSocket closed: " + reason);
-                }
-                @Override
-                public void onError(Exception ex) {
-                    System.err.println("OBS WebSocket error: " + ex.getMessage());
-                }
-            };
-            wsClient.connectBlocking();
-            // Wait for Identify handshake
-            synchronized(lock) {
-                long start = System.currentTimeMillis();
-                while (!identified[0] && (System.currentTimeMillis() - start) < 5000) {
-                    lock.wait(1000);
-                }
-            }
-            if (!identified[0]) {
-                System.err.println("OBS WebSocket: Identify handshake failed");
-                wsClient.close();
-                return false;
-            }
-            return wsClient.isOpen();
-        } catch (Exception e) {
-            System.err.println("Failed to connect to OBS WebSocket: " + e.getMessage());
-            return false;
+    private synchronized void refreshPreviewScene() {
+        if (previewFeed != null) {
+            previewFeed.refreshScene();
         }
     }
-
+    
+    public synchronized void stopPreview() {
+        if (previewFeed != null) {
+            previewFeed.stop();
+            previewFeed = null;
+        }
+    }
+    
+    /**
+     * Send a recording command and wait for OBS to confirm it
+     */
     private boolean sendOBSCommand(String command) {
+        if (!RECORD_COMMANDS.contains(command)) {
+            return false;
+        }
         try {
-            if (!connectWebSocket()) return false;
-            String requestType;
-            switch (command) {
-                case "StartRecord":
-                    requestType = "StartRecord";
-                    break;
-                case "StopRecord":
-                    requestType = "StopRecord";
-                    break;
-                case "PauseRecord":
-                    requestType = "PauseRecord";
-                    break;
-                case "ResumeRecord":
-                    requestType = "ResumeRecord";
-                    break;
-                default:
-                    return false;
-            }
-            Map<String, Object> req = Map.of(
-                "op", 6,
-                "d", Map.of(
-                    "requestType", requestType,
-                    "requestId", "req-" + messageId.getAndIncrement()
-                )
-            );
-            String json = objectMapper.writeValueAsString(req);
-            wsClient.send(json);
-            // Optionally wait for response
+            sendRequest(command, Map.of()).join();
             return true;
-        } catch (Exception e) {
-            System.err.println("Failed to send OBS command: " + e.getMessage());
+        } catch (CompletionException e) {
+            System.err.println("OBS command failed: " + e.getCause().getMessage());
             return false;
         }
     }
 
+    /**
+     * Apply the recording settings in one RequestBatch round trip. The batch halts at the first
+     * failure; the audio input check comes last so a missing input cannot stop the settings
+     * that matter from being applied, and its failure only produces a warning.
+     */
     private boolean configureOBSRecording(RecordingConfig config) {
+        rpcClient.start();
+        List<OBSRpcClient.BatchStep> steps = new ArrayList<>();
+        
+        // 1. Set output directory
+        String outputDir = config.getOutputDirectory().getAbsolutePath();
+        steps.add(new OBSRpcClient.BatchStep("SetRecordDirectory", Map.of("recordDirectory", outputDir)));
+        
+        // 2. Set output format (container) in both output modes' profile settings
+        for (String category : List.of("SimpleOutput", "AdvOut")) {
+            steps.add(new OBSRpcClient.BatchStep("SetProfileParameter", Map.of(
+                "parameterCategory", category,
+                "parameterName", "RecFormat2",
+                "parameterValue", config.getOutputFormat()
+            )));
+        }
+        
+        // 3. Set resolution
+        int width = config.getResolution().getWidth();
+        int height = config.getResolution().getHeight();
+        steps.add(new OBSRpcClient.BatchStep("SetVideoSettings", Map.of(
+            "baseWidth", width,
+            "baseHeight", height,
+            "outputWidth", width,
+            "outputHeight", height
+        )));
+        
+        // 4. Set video source (scene)
+        if (config.getVideoSource() != null) {
+            steps.add(new OBSRpcClient.BatchStep("SetCurrentProgramScene",
+                    Map.of("sceneName", config.getVideoSource().getName())));
+        }
+        int requiredSteps = steps.size();
+        
+        // 5. Set audio source (if needed)
+        if (config.getAudioSource() != null) {
+            steps.add(new OBSRpcClient.BatchStep("SetInputSettings", Map.of(
+                "inputName", config.getAudioSource().getName(),
+                "inputSettings", Map.of()
+            )));
+        }
+        
+        List<OBSRpcClient.StepResult> results;
         try {
-            if (!connectWebSocket()) return false;
-            // 1. Set output directory
-            String outputDir = config.getOutputDirectory().getAbsolutePath();
-            Map<String, Object> setDirReq = Map.of(
-                "op", 6,
-                "d", Map.of(
-                    "requestType", "SetRecordDirectory",
-                    "requestId", "req-" + messageId.getAndIncrement(),
-                    "requestData", Map.of("recordDirectory", outputDir)
-                )
-            );
-            wsClient.send(objectMapper.writeValueAsString(setDirReq));
-
-            // 2. Set output format (container)
-            String format = config.getOutputFormat();
-            Map<String, Object> setFormatReq = Map.of(
-                "op", 6,
-                "d", Map.of(
-                    "requestType", "SetRecordSettings",
-                    "requestId", "req-" + messageId.getAndIncrement(),
-                    "requestData", Map.of("rec_format", format)
-                )
-            );
-            wsClient.send(objectMapper.writeValueAsString(setFormatReq));
-
-            // 3. Set resolution
-            int width = config.getResolution().getWidth();
-            int height = config.getResolution().getHeight();
-            Map<String, Object> setResReq = Map.of(
-                "op", 6,
-                "d", Map.of(
-                    "requestType", "SetVideoSettings",
-                    "requestId", "req-" + messageId.getAndIncrement(),
-                    "requestData", Map.of(
-                        "baseWidth", width,
-                        "baseHeight", height,
-                        "outputWidth", width,
-                        "outputHeight", height
-                    )
-                )
-            );
-            wsClient.send(objectMapper.writeValueAsString(setResReq));
-
-            // 4. Set video source (scene)
-            if (config.getVideoSource() != null) {
-                String sceneName = config.getVideoSource().getName();
-                Map<String, Object> setSceneReq = Map.of(
-                    "op", 6,
-                    "d", Map.of(
-                        "requestType", "SetCurrentProgramScene",
-                        "requestId", "req-" + messageId.getAndIncrement(),
-                        "requestData", Map.of("sceneName", sceneName)
-                    )
-                );
-                wsClient.send(objectMapper.writeValueAsString(setSceneReq));
+            results = rpcClient.requestBatch(steps, true, OBSRpcClient.ExecutionType.SERIAL_REALTIME).join();
+        } catch (CompletionException e) {
+            System.err.println("Failed to configure OBS: " + e.getCause().getMessage());
+            return false;
+        }
+        
+        boolean configured = true;
+        for (int i = 0; i < results.size(); i++) {
+            OBSRpcClient.StepResult result = results.get(i);
+            if (result.isSuccess()) {
+                continue;
             }
-
-            // 5. Set audio source (if needed)
-            if (config.getAudioSource() != null) {
-                String audioInput = config.getAudioSource().getName();
-                Map<String, Object> setAudioReq = Map.of(
-                    "op", 6,
-                    "d", Map.of(
-                        "requestType", "SetInputSettings",
-                        "requestId", "req-" + messageId.getAndIncrement(),
-                        "requestData", Map.of(
-                            "inputName", audioInput,
-                            "inputSettings", Map.of()
-                        )
-                    )
-                );
-                wsClient.send(objectMapper.writeValueAsString(setAudioReq));
+            if (i < requiredSteps) {
+                System.err.println("OBS configuration failed: " + result);
+                configured = false;
+            } else {
+                System.err.println("Warning: OBS configuration " + result);
             }
-
-            // Optionally wait for responses/acks here
-            return true;
-        } catch (Exception e) {
-            System.err.println("Failed to configure OBS: " + e.getMessage());
-            return false;
         }
+        return configured;
     }
     
     private void updateStatus(String status) {
-        Platform.runLater(() -> statusProperty.set(status));
+        statusPublisher.publish(status);
         System.out.println("OBS Status: " + status);
     }
+    
+    /**
+     * Number of status updates that were superseded before reaching the UI
+     */
+    public long getDroppedStatusUpdates() {
+        return statusPublisher.getDroppedCount();
+    }
 }
@@ -0,0 +1,290 @@
+package com.screenrecorder.service;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import com.screenrecorder.util.ApplicationProperties;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Preview for the OBS engine, built from GetSourceScreenshot requests on the OBS WebSocket.
+ *
+ * At most one screenshot is in flight; a tick that finds the previous request unanswered is
+ * skipped rather than queued. Base64 and JPEG decoding run on the poller thread into reused
+ * buffers and one reused image, so a frame allocates no pixel storage. The rate is halved
+ * whenever OBS reports new skipped render or output frames and slowly restored while it
+ * reports none, so the preview backs off before it can cost the recording a frame.
+ *
+ * The scene to capture is read once on start and then followed through
+ * CurrentProgramSceneChanged events passed to {@link #onProgramSceneChanged}. Responses are
+ * handled on the poller thread, which owns all rate-control state.
+ */
+public class OBSPreviewFeed {
+    private static final long STATS_INTERVAL_MILLIS = 2000;
+    private static final int STABLE_CHECKS_BEFORE_SPEEDUP = 3;
+
+    private final BiFunction<String, Map<String, Object>, CompletableFuture<Map<?, ?>>> requester;
+    private final LivePreview preview;
+    private final double maxFps;
+    private final double minFps;
+    private final ByteBuffer frame;
+    private final ImageReader jpegReader;
+    private final ImageReadParam readParam;
+    /** Pixels of the reused destination image, 3 bytes per pixel in B, G, R order */
+    private final byte[] bgr;
+    private byte[] base64 = new byte[0];
+    private byte[] decoded;
+
+    private ScheduledExecutorService poller;
+    private volatile double currentFps;
+    private volatile boolean requestInFlight;
+    private volatile String sourceName;
+    private long nextStatsCheck;
+    private long lastRenderSkipped = -1;
+    private long lastOutputSkipped = -1;
+    private int stableChecks;
+
+    private volatile long framesShown;
+    private volatile long ticksSkipped;
+    private volatile long rateReductions;
+
+    /**
+     * @param requester sends an OBS request (type, data) and completes with its responseData
+     */
+    public OBSPreviewFeed(BiFunction<String, Map<String, Object>, CompletableFuture<Map<?, ?>>> requester,
+                          LivePreview preview) {
+        this.requester = requester;
+        this.preview = preview;
+        this.maxFps = Math.max(0.1, ApplicationProperties.getInt("obs.preview.fps", 5));
+        this.minFps = Math.min(maxFps, 0.5);
+        this.currentFps = maxFps;
+        this.frame = ByteBuffer.allocateDirect(preview.getWidth() * preview.getHeight() * 4).order(ByteOrder.nativeOrder());
+        // Generous upper bound for a compressed preview-sized JPEG
+        this.decoded = new byte[preview.getWidth() * preview.getHeight() * 4];
+        // Every screenshot is decoded into the same image, so frames add no garbage
+        this.jpegReader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        BufferedImage destination = new BufferedImage(preview.getWidth(), preview.getHeight(),
+                BufferedImage.TYPE_3BYTE_BGR);
+        this.bgr = ((DataBufferByte) destination.getRaster().getDataBuffer()).getData();
+        this.readParam = jpegReader.getDefaultReadParam();
+        this.readParam.setDestination(destination);
+    }
+
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "obs-preview");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        requestInFlight = false;
+        refreshScene();
+        scheduleNext(0);
+    }
+
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    private synchronized void scheduleNext(long delayMillis) {
+        if (poller != null) {
+            poller.schedule(this::tick, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void tick() {
+        long started = System.currentTimeMillis();
+        try {
+            if (started >= nextStatsCheck) {
+                nextStatsCheck = started + STATS_INTERVAL_MILLIS;
+                checkStats();
+            }
+            if (requestInFlight) {
+                ticksSkipped++;
+            } else if (sourceName != null) {
+                requestScreenshot();
+            }
+        } catch (Exception e) {
+            System.err.println("OBS preview: " + e.getMessage());
+        } finally {
+            long interval = (long) (1000 / currentFps);
+            scheduleNext(Math.max(0, interval - (System.currentTimeMillis() - started)));
+        }
+    }
+
+    private void requestScreenshot() {
+        ScheduledExecutorService decoder = poller;
+        if (decoder == null) {
+            return;
+        }
+        requestInFlight = true;
+        requester.apply("GetSourceScreenshot", Map.of(
+                        "sourceName", sourceName,
+                        "imageFormat", "jpg",
+                        "imageWidth", preview.getWidth(),
+                        "imageHeight", preview.getHeight(),
+                        "imageCompressionQuality", 60))
+                // Decode on the poller thread, never on the WebSocket thread that carries recording commands
+                .whenCompleteAsync((response, error) -> {
+                    try {
+                        if (error == null && response != null && response.get("imageData") instanceof String data) {
+                            decode(data);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("OBS preview decode failed: " + e.getMessage());
+                    } finally {
+                        requestInFlight = false;
+                    }
+                }, decoder);
+    }
+
+    /**
+     * Decode a "data:image/jpg;base64,..." URI into the preview
+     */
+    private void decode(String dataUri) throws IOException {
+        int comma = dataUri.indexOf(',');
+        int base64Length = dataUri.length() - comma - 1;
+        if (base64.length < base64Length) {
+            base64 = new byte[base64Length];
+        }
+        dataUri.getBytes(comma + 1, dataUri.length(), base64, 0);
+        int maxDecoded = base64Length / 4 * 3;
+        if (decoded.length < maxDecoded) {
+            // Grown once for an unusually large screenshot, then reused
+            decoded = new byte[maxDecoded];
+        }
+        int length;
+        try (InputStream in = Base64.getDecoder().wrap(new ByteArrayInputStream(base64, 0, base64Length))) {
+            length = in.readNBytes(decoded, 0, decoded.length);
+        }
+        decodeImage(decoded, length);
+    }
+
+    /**
+     * Decode the JPEG into the reused BGR image and convert it into the reused BGRA frame
+     */
+    private void decodeImage(byte[] data, int length) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data, 0, length))) {
+            jpegReader.setInput(input, true, true);
+            int width = Math.min(preview.getWidth(), jpegReader.getWidth(0));
+            int height = Math.min(preview.getHeight(), jpegReader.getHeight(0));
+            readParam.setSourceRegion(new Rectangle(0, 0, width, height));
+            jpegReader.read(0, readParam);
+
+            frame.clear();
+            int rowBytes = preview.getWidth() * 3;
+            for (int y = 0; y < height; y++) {
+                frame.position(y * preview.getWidth() * 4);
+                for (int x = 0, i = y * rowBytes; x < width; x++, i += 3) {
+                    frame.put(bgr[i]).put(bgr[i + 1]).put(bgr[i + 2]).put((byte) 0xFF);
+                }
+            }
+            frame.clear();
+            preview.submitFrame(frame);
+            framesShown++;
+        } finally {
+            jpegReader.setInput(null);
+        }
+    }
+
+    /**
+     * Read the program scene, e.g. on start or after a reconnect when scene events may have been missed
+     */
+    public void refreshScene() {
+        requester.apply("GetCurrentProgramScene", Map.of()).thenAccept(response -> {
+            Object name = response.get("currentProgramSceneName");
+            if (name == null) {
+                name = response.get("sceneName");
+            }
+            if (name instanceof String scene) {
+                sourceName = scene;
+            }
+        });
+    }
+
+    /**
+     * Follow the program scene from the eventData of a CurrentProgramSceneChanged event
+     */
+    public void onProgramSceneChanged(Map<?, ?> eventData) {
+        if (eventData.get("sceneName") instanceof String scene) {
+            sourceName = scene;
+        }
+    }
+
+    /**
+     * Back off when OBS starts skipping frames
+     */
+    private void checkStats() {
+        ScheduledExecutorService handler = poller;
+        if (handler == null) {
+            return;
+        }
+        // Handled on the poller thread, the only one touching the rate-control state
+        requester.apply("GetStats", Map.of()).thenAcceptAsync(response -> {
+            long renderSkipped = asLong(response.get("renderSkippedFrames"));
+            long outputSkipped = asLong(response.get("outputSkippedFrames"));
+            boolean skipping = lastRenderSkipped >= 0
+                    && (renderSkipped > lastRenderSkipped || outputSkipped > lastOutputSkipped);
+            lastRenderSkipped = renderSkipped;
+            lastOutputSkipped = outputSkipped;
+
+            if (skipping) {
+                stableChecks = 0;
+                if (currentFps > minFps) {
+                    currentFps = Math.max(minFps, currentFps / 2);
+                    rateReductions++;
+                    System.out.println("OBS is skipping frames, preview reduced to " + currentFps + " fps");
+                }
+            } else if (++stableChecks >= STABLE_CHECKS_BEFORE_SPEEDUP && currentFps < maxFps) {
+                stableChecks = 0;
+                currentFps = Math.min(maxFps, currentFps + 1);
+            }
+        }, handler);
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    public double getCurrentFps() {
+        return currentFps;
+    }
+
+    public long getFramesShown() {
+        return framesShown;
+    }
+
+    /**
+     * Ticks skipped because OBS had not answered the previous screenshot yet
+     */
+    public long getTicksSkipped() {
+        return ticksSkipped;
+    }
+
+    public long getRateReductions() {
+        return rateReductions;
+    }
+}
@@ -0,0 +1,103 @@
+package com.screenrecorder.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Detects when a freshly started OBS is ready to take requests.
+ *
+ * The WebSocket port is probed with a short backoff that starts at 50 ms, so readiness is
+ * noticed within a few tens of milliseconds of OBS opening it. An open port only means the
+ * server is listening; OBS counts as ready once the RPC session has completed Identify. The
+ * OBS process is watched throughout, so a crash during startup fails at once instead of
+ * waiting out the timeout.
+ */
+public class OBSReadinessDetector {
+    private static final long INITIAL_PROBE_MILLIS = 50;
+    private static final long MAX_PROBE_MILLIS = 500;
+    private static final int PORT_PROBE_TIMEOUT_MILLIS = 250;
+    /** Time given to one Identify handshake once the port is open */
+    private static final Duration IDENTIFY_TIMEOUT = Duration.ofSeconds(2);
+
+    private final String host;
+    private final int port;
+    private final OBSRpcClient rpcClient;
+
+    private volatile Duration portOpenAfter;
+    private volatile Duration timeToReady;
+
+    public OBSReadinessDetector(String host, int port, OBSRpcClient rpcClient) {
+        this.host = host;
+        this.port = port;
+        this.rpcClient = rpcClient;
+    }
+
+    /**
+     * Wait until OBS has accepted the RPC session
+     *
+     * @param processAlive tells whether the OBS process is still running
+     * @param launchedNanos System.nanoTime() at which OBS was launched; times are measured from it
+     * @param timeout how long to wait, counted from this call
+     * @return time from launch until OBS was ready, or null when the process exited or the
+     *         timeout passed first
+     */
+    public Duration awaitReady(BooleanSupplier processAlive, long launchedNanos, Duration timeout)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long probeMillis = INITIAL_PROBE_MILLIS;
+        portOpenAfter = null;
+        timeToReady = null;
+
+        while (System.nanoTime() < deadline) {
+            if (!processAlive.getAsBoolean()) {
+                System.err.println("OBS exited before it was ready");
+                return null;
+            }
+            if (isPortOpen()) {
+                if (portOpenAfter == null) {
+                    portOpenAfter = Duration.ofNanos(System.nanoTime() - launchedNanos);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (rpcClient.connect(Duration.ofNanos(Math.min(remaining, IDENTIFY_TIMEOUT.toNanos())))) {
+                    timeToReady = Duration.ofNanos(System.nanoTime() - launchedNanos);
+                    System.out.println("OBS ready in " + timeToReady.toMillis() + " ms (WebSocket port open after "
+                            + portOpenAfter.toMillis() + " ms)");
+                    return timeToReady;
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(probeMillis);
+            probeMillis = Math.min(MAX_PROBE_MILLIS, probeMillis * 3 / 2);
+        }
+        System.out.println("Timeout: OBS was not ready after " + timeout.toSeconds() + " seconds"
+                + (portOpenAfter != null ? " (WebSocket port open, Identify never completed)" : ""));
+        return null;
+    }
+
+    private boolean isPortOpen() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), PORT_PROBE_TIMEOUT_MILLIS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Time from launching OBS until it accepted the session in the last wait; null if it never did
+     */
+    public Duration getTimeToReady() {
+        return timeToReady;
+    }
+
+    /**
+     * Time from launching OBS until its WebSocket port accepted connections in the last wait;
+     * null if it never did
+     */
+    public Duration getPortOpenAfter() {
+        return portOpenAfter;
+    }
+}
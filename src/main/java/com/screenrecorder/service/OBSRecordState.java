@@ -0,0 +1,172 @@
+package com.screenrecorder.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording state of OBS as pushed in RecordStateChanged events.
+ *
+ * The elapsed recording time is derived from when the STARTED, PAUSED and RESUMED events
+ * arrived, so reading it never costs a request to OBS.
+ */
+public class OBSRecordState {
+
+    public enum State {
+        STOPPED,
+        STARTING,
+        RECORDING,
+        PAUSED,
+        STOPPING
+    }
+
+    private State state = State.STOPPED;
+    private String outputPath;
+    private long startedNanos;
+    private long pausedSinceNanos;
+    private long pausedTotalNanos;
+
+    /**
+     * Apply the eventData of a RecordStateChanged event
+     *
+     * @return the new state
+     */
+    public synchronized State onRecordStateChanged(Map<?, ?> eventData) {
+        String outputState = String.valueOf(eventData.get("outputState"));
+        if (eventData.get("outputPath") instanceof String path && !path.isEmpty()) {
+            outputPath = path;
+        }
+        long now = System.nanoTime();
+        switch (outputState) {
+            case "OBS_WEBSOCKET_OUTPUT_STARTING":
+                state = State.STARTING;
+                break;
+            case "OBS_WEBSOCKET_OUTPUT_STARTED":
+                state = State.RECORDING;
+                startedNanos = now;
+                pausedTotalNanos = 0;
+                pausedSinceNanos = 0;
+                break;
+            case "OBS_WEBSOCKET_OUTPUT_PAUSED":
+                state = State.PAUSED;
+                pausedSinceNanos = now;
+                break;
+            case "OBS_WEBSOCKET_OUTPUT_RESUMED":
+                state = State.RECORDING;
+                if (pausedSinceNanos != 0) {
+                    pausedTotalNanos += now - pausedSinceNanos;
+                    pausedSinceNanos = 0;
+                }
+                break;
+            case "OBS_WEBSOCKET_OUTPUT_STOPPING":
+                state = State.STOPPING;
+                break;
+            case "OBS_WEBSOCKET_OUTPUT_STOPPED":
+                state = State.STOPPED;
+                break;
+            default:
+                // Fall back on the flag for states this version does not know
+                if (Boolean.FALSE.equals(eventData.get("outputActive"))) {
+                    state = State.STOPPED;
+                }
+        }
+        return state;
+    }
+
+    /**
+     * Re-read the state with GetRecordStatus after (re)connecting, since events sent while the
+     * connection was down are lost. A failed request is logged and leaves the state alone.
+     *
+     * @return completes with whether the state changed
+     */
+    public CompletableFuture<Boolean> resync(OBSRpcClient client) {
+        return client.request("GetRecordStatus", Map.of())
+                .whenComplete((status, error) -> {
+                    if (error != null) {
+                        System.err.println("Failed to read OBS recording status: " + error.getMessage());
+                    }
+                })
+                .thenApply(status -> {
+                    synchronized (this) {
+                        State previous = state;
+                        return onRecordStatus(status) != previous;
+                    }
+                });
+    }
+
+    /**
+     * Apply the responseData of a GetRecordStatus request, e.g. after reconnecting when events
+     * may have been missed
+     *
+     * @return the new state
+     */
+    public synchronized State onRecordStatus(Map<?, ?> status) {
+        boolean active = Boolean.TRUE.equals(status.get("outputActive"));
+        boolean paused = Boolean.TRUE.equals(status.get("outputPaused"));
+        if (!active) {
+            state = State.STOPPED;
+            return state;
+        }
+        long now = System.nanoTime();
+        if (status.get("outputDuration") instanceof Number duration) {
+            // OBS reports recorded time without pauses, so the pause total folds into the start
+            startedNanos = now - TimeUnit.MILLISECONDS.toNanos(duration.longValue());
+            pausedTotalNanos = 0;
+            pausedSinceNanos = paused ? now : 0;
+        } else if (startedNanos == 0) {
+            startedNanos = now;
+        }
+        state = paused ? State.PAUSED : State.RECORDING;
+        return state;
+    }
+
+    /**
+     * Forget the recording, e.g. when OBS exits; the output path is kept
+     */
+    public synchronized void reset() {
+        state = State.STOPPED;
+        startedNanos = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * True while OBS has the recording output running, paused or not
+     */
+    public synchronized boolean isActive() {
+        return state == State.RECORDING || state == State.PAUSED || state == State.STOPPING;
+    }
+
+    public synchronized boolean isPaused() {
+        return state == State.PAUSED;
+    }
+
+    /**
+     * File OBS is writing, or wrote last; null until OBS reported one
+     */
+    public synchronized String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Time recorded so far, pauses excluded; zero when not recording
+     */
+    public synchronized Duration getElapsed() {
+        if (startedNanos == 0 || !isActive()) {
+            return Duration.ZERO;
+        }
+        long end = pausedSinceNanos != 0 ? pausedSinceNanos : System.nanoTime();
+        return Duration.ofNanos(end - startedNanos - pausedTotalNanos);
+    }
+
+    /**
+     * Elapsed time as HH:MM:SS
+     */
+    public String formatElapsed() {
+        long seconds = getElapsed().toSeconds();
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -10,19 +10,14 @@ import javafx.beans.property.StringProperty;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Service for managing OBS Studio recording operations via WebSocket API
@@ -40,19 +35,20 @@ import java.util.concurrent.TimeUnit;
 public class OBSRecordingService {
     
     private final ExecutorService executorService;
-    private final ScheduledExecutorService scheduledExecutor;
     private final BooleanProperty recordingProperty;
     private final BooleanProperty pausedProperty;
     private final StringProperty statusProperty;
     private final BooleanProperty obsConnectedProperty;
+    private final CaptureActivity.Registration capture = CaptureActivity.newRegistration();
     
     // OBS WebSocket connection details
     private String obsWebSocketHost = "localhost";
     private int obsWebSocketPort = 4455;
     private String obsWebSocketPassword = ""; // Set in OBS WebSocket settings
     
-    // HTTP client for REST-like calls to OBS
-    private final HttpClient httpClient;
+    // WebSocket session over which OBS pushes its state
+    private volatile OBSRpcClient rpcClient;
+    private final OBSRecordState recordState = new OBSRecordState();
     
     // Current recording session
     private String currentSessionId;
@@ -60,18 +56,13 @@ public class OBSRecordingService {
     
     public OBSRecordingService() {
         this.executorService = Executors.newCachedThreadPool();
-        this.scheduledExecutor = Executors.newScheduledThreadPool(2);
         this.recordingProperty = new SimpleBooleanProperty(false);
         this.pausedProperty = new SimpleBooleanProperty(false);
         this.statusProperty = new SimpleStringProperty("Disconnected");
         this.obsConnectedProperty = new SimpleBooleanProperty(false);
         
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-        
-        // Start connection monitoring
-        startConnectionMonitoring();
+        // Connect once; from then on OBS pushes state changes instead of being polled
+        executorService.submit(this::connectToOBS);
     }
     
     /**
@@ -117,25 +108,102 @@ public class OBSRecordingService {
      * Test connection to OBS WebSocket
      */
     public CompletableFuture<Boolean> testOBSConnection() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Simple HTTP request to check if WebSocket server is responding
-                String url = String.format("http://%s:%d", obsWebSocketHost, obsWebSocketPort);
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .timeout(Duration.ofSeconds(5))
-                        .GET()
-                        .build();
-                        
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                // OBS WebSocket typically returns a specific response
-                return response.statusCode() == 200 || response.statusCode() == 404; // 404 is normal for WebSocket endpoint
-                
-            } catch (Exception e) {
-                return false;
+        return CompletableFuture.supplyAsync(this::connectToOBS, executorService);
+    }
+    
+    /**
+     * Open the event session with OBS unless it is already open
+     */
+    private synchronized boolean connectToOBS() {
+        if (rpcClient == null) {
+            OBSRpcClient client = new OBSRpcClient(obsWebSocketHost, obsWebSocketPort, obsWebSocketPassword);
+            client.setEventSubscriptions(OBSRpcClient.EVENTS_GENERAL | OBSRpcClient.EVENTS_OUTPUTS);
+            client.addEventListener("RecordStateChanged", this::onRecordStateChanged);
+            client.addEventListener("ExitStarted", data -> onOBSGone());
+            client.addConnectionListener(connected -> {
+                if (connected) {
+                    Platform.runLater(() -> {
+                        obsConnectedProperty.set(true);
+                        if (statusProperty.get().equals("Disconnected") || statusProperty.get().equals("OBS Disconnected")) {
+                            statusProperty.set("OBS Connected");
+                        }
+                    });
+                    resyncRecordState();
+                } else {
+                    onConnectionLost();
+                }
+            });
+            rpcClient = client;
+        }
+        return rpcClient.connect();
+    }
+    
+    /**
+     * Follow the recording as OBS reports it: state, output file and elapsed time
+     */
+    private void onRecordStateChanged(Map<?, ?> eventData) {
+        publishRecordState(recordState.onRecordStateChanged(eventData));
+    }
+    
+    private void resyncRecordState() {
+        OBSRpcClient client = rpcClient;
+        if (client == null) {
+            return;
+        }
+        recordState.resync(client).thenAccept(changed -> {
+            if (changed) {
+                publishRecordState(recordState.getState());
             }
-        }, executorService);
+        });
+    }
+    
+    private void publishRecordState(OBSRecordState.State state) {
+        boolean active = recordState.isActive();
+        boolean paused = recordState.isPaused();
+        capture.setActive(active);
+        String path = recordState.getOutputPath();
+        Platform.runLater(() -> {
+            recordingProperty.set(active);
+            pausedProperty.set(paused);
+            if (state == OBSRecordState.State.RECORDING) {
+                statusProperty.set("Recording with OBS" + (path != null ? " - " + path : ""));
+            } else if (state == OBSRecordState.State.PAUSED) {
+                statusProperty.set("Recording paused at " + recordState.formatElapsed());
+            } else if (state == OBSRecordState.State.STOPPED) {
+                statusProperty.set("Recording stopped" + (path != null ? " - saved to " + path : ""));
+            }
+        });
+    }
+    
+    /**
+     * The connection dropped; OBS keeps recording meanwhile, so the recording state is left
+     * alone until it is re-read on reconnect
+     */
+    private void onConnectionLost() {
+        Platform.runLater(() -> {
+            obsConnectedProperty.set(false);
+            statusProperty.set(recordingProperty.get() ? "OBS connection lost, reconnecting (still recording)" : "OBS Disconnected");
+        });
+    }
+    
+    /**
+     * OBS is exiting
+     */
+    private void onOBSGone() {
+        boolean wasRecording = recordState.isActive();
+        recordState.reset();
+        if (wasRecording) {
+            capture.setActive(false);
+        }
+        Platform.runLater(() -> {
+            obsConnectedProperty.set(false);
+            if (wasRecording) {
+                recordingProperty.set(false);
+                pausedProperty.set(false);
+            } else if (!recordingProperty.get()) {
+                statusProperty.set("OBS Disconnected");
+            }
+        });
     }
     
     /**
@@ -157,6 +225,9 @@ public class OBSRecordingService {
                     return false;
                 }
                 
+                // Subscribe to OBS's recording events
+                connectToOBS();
+                
                 // Configure OBS recording settings
                 if (!configureOBSSettings(config)) {
                     Platform.runLater(() -> statusProperty.set("Failed to configure OBS settings"));
@@ -168,15 +239,13 @@ public class OBSRecordingService {
                     Platform.runLater(() -> statusProperty.set("Failed to start OBS recording"));
                     return false;
                 }
+                capture.setActive(true);
                 
                 Platform.runLater(() -> {
                     recordingProperty.set(true);
                     statusProperty.set("Recording with OBS...");
                 });
                 
-                // Start monitoring recording status
-                startRecordingMonitoring();
-                
                 return true;
                 
             } catch (Exception e) {
@@ -199,6 +268,7 @@ public class OBSRecordingService {
         executorService.submit(() -> {
             try {
                 sendOBSStopRecording();
+                capture.setActive(false);
                 
                 Platform.runLater(() -> {
                     recordingProperty.set(false);
@@ -391,53 +461,31 @@ public class OBSRecordingService {
     }
     
     /**
-     * Start monitoring OBS connection
-     */
-    private void startConnectionMonitoring() {
-        scheduledExecutor.scheduleAtFixedRate(() -> {
-            testOBSConnection().thenAccept(connected -> {
-                Platform.runLater(() -> {
-                    obsConnectedProperty.set(connected);
-                    if (connected && statusProperty.get().equals("Disconnected")) {
-                        statusProperty.set("OBS Connected");
-                    } else if (!connected && !recordingProperty.get()) {
-                        statusProperty.set("OBS Disconnected");
-                    }
-                });
-            });
-        }, 0, 5, TimeUnit.SECONDS);
-    }
-    
-    /**
-     * Start monitoring recording status
+     * Recorded time so far, pauses excluded, as tracked from OBS's RecordStateChanged events
      */
-    private void startRecordingMonitoring() {
-        scheduledExecutor.scheduleAtFixedRate(() -> {
-            if (recordingProperty.get()) {
-                // Monitor recording time and update status
-                Platform.runLater(() -> {
-                    // This would get actual recording time from OBS
-                    statusProperty.set("Recording with OBS - " + getCurrentRecordingTime());
-                });
-            }
-        }, 1, 1, TimeUnit.SECONDS);
+    public Duration getRecordingElapsed() {
+        return recordState.getElapsed();
     }
     
     /**
-     * Get current recording time (placeholder)
+     * File OBS is recording to, or saved last; null before OBS reported one
      */
-    private String getCurrentRecordingTime() {
-        // This would get actual time from OBS WebSocket
-        return "00:00:00";
+    public String getRecordingOutputPath() {
+        return recordState.getOutputPath();
     }
     
     /**
      * Set OBS WebSocket connection details
      */
-    public void setOBSConnection(String host, int port, String password) {
+    public synchronized void setOBSConnection(String host, int port, String password) {
         this.obsWebSocketHost = host;
         this.obsWebSocketPort = port;
         this.obsWebSocketPassword = password;
+        // The next connection attempt uses the new details
+        if (rpcClient != null) {
+            rpcClient.close();
+            rpcClient = null;
+        }
     }
     
     /**
@@ -446,7 +494,10 @@ public class OBSRecordingService {
     public void shutdown() {
         stopRecording();
         executorService.shutdown();
-        scheduledExecutor.shutdown();
+        OBSRpcClient client = rpcClient;
+        if (client != null) {
+            client.close();
+        }
     }
     
     // Property getters
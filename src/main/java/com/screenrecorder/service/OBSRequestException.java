@@ -0,0 +1,56 @@
+package com.screenrecorder.service;
+
+/**
+ * An OBS WebSocket request that did not succeed, with the reason it failed
+ */
+public class OBSRequestException extends RuntimeException {
+
+    public enum Reason {
+        /** OBS answered with a failed requestStatus */
+        REJECTED,
+        /** No answer arrived before the request's deadline */
+        TIMEOUT,
+        /** The connection was not open or closed while the request was in flight */
+        DISCONNECTED
+    }
+
+    private final String requestType;
+    private final Reason reason;
+    private final int statusCode;
+
+    /**
+     * @param statusCode OBS RequestStatus code for rejected requests, 0 otherwise
+     */
+    public OBSRequestException(String requestType, Reason reason, int statusCode, String message) {
+        super(requestType + " " + describe(reason) + (message != null && !message.isBlank() ? ": " + message : ""));
+        this.requestType = requestType;
+        this.reason = reason;
+        this.statusCode = statusCode;
+    }
+
+    private static String describe(Reason reason) {
+        switch (reason) {
+            case TIMEOUT:
+                return "timed out";
+            case DISCONNECTED:
+                return "failed without a connection to OBS";
+            default:
+                return "failed";
+        }
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * OBS RequestStatus code, e.g. 500 (output running) or 501 (output not running); 0 unless rejected
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,778 @@
+package com.screenrecorder.service;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenrecorder.util.ApplicationProperties;
+import com.screenrecorder.util.LatencyHistogram;
+
+/**
+ * Request/response client for the OBS WebSocket v5 protocol.
+ *
+ * Every op 6 request gets a unique requestId and a future that the matching op 7 response
+ * completes, so any number of requests can be in flight on the one socket and answers may
+ * arrive in any order. A request that is rejected by OBS, misses its deadline or loses the
+ * connection fails with an {@link OBSRequestException} saying which. Several requests can also
+ * go out as one op 8 RequestBatch, answered in a single round trip. Response times are kept
+ * per request type.
+ *
+ * Events (op 5) are only sent by OBS for the categories in the eventSubscriptions bitmask, so
+ * listeners receive state changes as they happen without any polling. Listeners run on the
+ * WebSocket thread and must return quickly.
+ *
+ * Once started, the client keeps one long-lived session: a lost connection is re-established
+ * with bounded exponential backoff and jitter, and a GetVersion heartbeat detects a session
+ * that is open but no longer answering. Requests made while reconnecting are queued and sent
+ * as soon as the session is back, or fail with TIMEOUT at their deadline; requests that were
+ * already sent when the connection dropped fail with DISCONNECTED, since OBS may or may not
+ * have run them.
+ */
+public class OBSRpcClient {
+    /** ExitStarted, VendorEvent and other general events */
+    public static final int EVENTS_GENERAL = 1;
+    /** CurrentProgramSceneChanged and the other scene events */
+    public static final int EVENTS_SCENES = 1 << 2;
+    /** RecordStateChanged, StreamStateChanged and the other output events */
+    public static final int EVENTS_OUTPUTS = 1 << 6;
+    /** High-volume InputVolumeMeters, sent every 50 ms; only subscribed on request */
+    public static final int EVENTS_INPUT_VOLUME_METERS = 1 << 16;
+
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+    public enum ConnectionState {
+        /** Not started yet */
+        IDLE,
+        CONNECTING,
+        CONNECTED,
+        /** Lost the session, waiting for the next attempt */
+        RECONNECTING,
+        /** Closed for good */
+        CLOSED
+    }
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final Duration defaultTimeout;
+    private final long reconnectInitialMillis;
+    private final long reconnectMaxMillis;
+    private final long heartbeatMillis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong requestCounter = new AtomicLong();
+    private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<Map<?, ?>>>> eventListeners = new ConcurrentHashMap<>();
+    private final List<Consumer<Boolean>> connectionListeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<String> queuedRequests = new ConcurrentLinkedQueue<>();
+    private final Object stateLock = new Object();
+    private final ScheduledExecutorService connectionExecutor;
+
+    private volatile WebSocketClient wsClient;
+    private volatile ConnectionState state = ConnectionState.IDLE;
+    private volatile int eventSubscriptions;
+    private int reconnectAttempts;
+    private ScheduledFuture<?> reconnectTask;
+    private ScheduledFuture<?> heartbeatTask;
+    private boolean heartbeatInFlight;
+
+    /**
+     * How OBS runs the requests of a batch
+     */
+    public enum ExecutionType {
+        /** One after the other, as fast as possible */
+        SERIAL_REALTIME(0),
+        /** One per rendered frame, so each change lands on its own frame */
+        SERIAL_FRAME(1),
+        /** All at once on OBS's thread pool, in no particular order */
+        PARALLEL(2);
+
+        private final int code;
+
+        ExecutionType(int code) {
+            this.code = code;
+        }
+    }
+
+    /**
+     * One request of a batch
+     */
+    public static class BatchStep {
+        private final String requestType;
+        private final Map<String, Object> requestData;
+
+        public BatchStep(String requestType, Map<String, Object> requestData) {
+            this.requestType = requestType;
+            this.requestData = requestData;
+        }
+
+        public String getRequestType() {
+            return requestType;
+        }
+    }
+
+    /**
+     * Outcome of one request of a batch
+     */
+    public static class StepResult {
+        private final String requestType;
+        private final boolean executed;
+        private final boolean success;
+        private final int statusCode;
+        private final String comment;
+        private final Map<?, ?> responseData;
+
+        StepResult(String requestType, boolean executed, boolean success, int statusCode, String comment,
+                   Map<?, ?> responseData) {
+            this.requestType = requestType;
+            this.executed = executed;
+            this.success = success;
+            this.statusCode = statusCode;
+            this.comment = comment;
+            this.responseData = responseData;
+        }
+
+        public String getRequestType() {
+            return requestType;
+        }
+
+        /**
+         * False when OBS never ran the request because an earlier one failed
+         */
+        public boolean isExecuted() {
+            return executed;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        public Map<?, ?> getResponseData() {
+            return responseData;
+        }
+
+        @Override
+        public String toString() {
+            if (!executed) {
+                return requestType + ": not run";
+            }
+            return requestType + ": " + (success ? "ok" : "failed, code " + statusCode
+                    + (comment != null ? ", " + comment : ""));
+        }
+    }
+
+    /**
+     * A request or batch awaiting its answer; completes with the raw op 7 or op 9 data
+     */
+    private static class PendingRequest {
+        final String requestType;
+        final String message;
+        final CompletableFuture<Map<?, ?>> response = new CompletableFuture<>();
+        volatile long sentNanos;
+        volatile boolean sent;
+
+        PendingRequest(String requestType, String message) {
+            this.requestType = requestType;
+            this.message = message;
+        }
+    }
+
+    /**
+     * @param password WebSocket server password, empty when authentication is disabled
+     */
+    public OBSRpcClient(String host, int port, String password) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.defaultTimeout = Duration.ofMillis(ApplicationProperties.getInt("obs.request.timeout.ms", 5000));
+        this.reconnectInitialMillis = Math.max(50, ApplicationProperties.getInt("obs.reconnect.initial.ms", 500));
+        this.reconnectMaxMillis = Math.max(reconnectInitialMillis, ApplicationProperties.getInt("obs.reconnect.max.ms", 30000));
+        this.heartbeatMillis = ApplicationProperties.getInt("obs.heartbeat.seconds", 10) * 1000L;
+        this.connectionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "obs-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start keeping a session with OBS; returns at once, the first attempt runs in the background
+     */
+    public void start() {
+        synchronized (stateLock) {
+            if (state != ConnectionState.IDLE) {
+                return;
+            }
+            state = ConnectionState.CONNECTING;
+        }
+        connectionExecutor.execute(this::openSession);
+    }
+
+    /**
+     * Make sure the session is up: start it, or retry right away instead of waiting out the
+     * backoff, and wait for the handshake
+     *
+     * @return true once OBS has accepted the session
+     */
+    public boolean connect() {
+        return connect(Duration.ofMillis(HANDSHAKE_TIMEOUT_MILLIS * 2));
+    }
+
+    /**
+     * Like {@link #connect()}, but gives up when the attempt fails or the timeout passes,
+     * whichever comes first; a failed attempt is still retried in the background
+     */
+    public boolean connect(Duration timeout) {
+        start();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (stateLock) {
+            if (state == ConnectionState.RECONNECTING && reconnectTask != null && reconnectTask.cancel(false)) {
+                reconnectTask = null;
+                state = ConnectionState.CONNECTING;
+                connectionExecutor.execute(this::openSession);
+            }
+            while (state == ConnectionState.CONNECTING) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    stateLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return state == ConnectionState.CONNECTED;
+        }
+    }
+
+    /**
+     * Wait until the session is established
+     *
+     * @return false when it was not up within the timeout or the client is closed
+     */
+    public boolean awaitConnected(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (stateLock) {
+            while (state != ConnectionState.CONNECTED && state != ConnectionState.CLOSED) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    stateLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return state == ConnectionState.CONNECTED;
+        }
+    }
+
+    public boolean isConnected() {
+        return state == ConnectionState.CONNECTED;
+    }
+
+    public ConnectionState getConnectionState() {
+        return state;
+    }
+
+    /**
+     * One connection attempt, on the connection thread. The session counts as established only
+     * once OBS has answered Identify; a failed or stalled attempt schedules the next one.
+     */
+    private void openSession() {
+        if (state == ConnectionState.CLOSED) {
+            return;
+        }
+        try {
+            WebSocketClient client = new WebSocketClient(new URI("ws://" + host + ":" + port)) {
+                @Override
+                public void onOpen(ServerHandshake handshakedata) {
+                    System.out.println("OBS WebSocket connected");
+                }
+
+                @Override
+                public void onMessage(String message) {
+                    try {
+                        Map<?, ?> msg = objectMapper.readValue(message, Map.class);
+                        int op = msg.get("op") instanceof Number number ? number.intValue() : -1;
+                        Map<?, ?> d = msg.get("d") instanceof Map<?, ?> data ? data : Map.of();
+                        if (op == 0) {
+                            send(objectMapper.writeValueAsString(identify(d)));
+                        } else if (op == 2) {
+                            onIdentified(this);
+                        } else if (op == 5) {
+                            dispatchEvent(d);
+                        } else if (op == 7 || op == 9) {
+                            completeRequest(d);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Ignoring unreadable OBS message: " + e.getMessage());
+                    }
+                }
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                    System.out.println("OBS WebSocket closed: " + reason);
+                    onSessionLost(this, reason);
+                }
+
+                @Override
+                public void onError(Exception ex) {
+                    System.err.println("OBS WebSocket error: " + ex.getMessage());
+                }
+            };
+            wsClient = client;
+            if (!client.connectBlocking(HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                client.close();
+                onSessionLost(client, "connection refused");
+                return;
+            }
+            // A server that accepts the socket but never completes Identify is dropped
+            connectionExecutor.schedule(() -> {
+                if (wsClient == client && state != ConnectionState.CONNECTED) {
+                    System.err.println("OBS WebSocket: Identify handshake timed out");
+                    client.close();
+                }
+            }, HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Failed to connect to OBS WebSocket: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void onIdentified(WebSocketClient client) {
+        synchronized (stateLock) {
+            if (client != wsClient || state == ConnectionState.CLOSED) {
+                return;
+            }
+            if (state == ConnectionState.CONNECTED) {
+                // OBS answers a Reidentify with Identified too; the session itself is unchanged
+                return;
+            }
+            if (reconnectAttempts > 0) {
+                System.out.println("OBS session restored after " + reconnectAttempts + " attempt(s)");
+            }
+            state = ConnectionState.CONNECTED;
+            reconnectAttempts = 0;
+            heartbeatInFlight = false;
+            // Requests made while reconnecting go out now, in the order they were made
+            String requestId;
+            while ((requestId = queuedRequests.poll()) != null) {
+                PendingRequest pending = pendingRequests.get(requestId);
+                if (pending != null) {
+                    transmit(client, requestId, pending);
+                }
+            }
+            if (heartbeatTask != null) {
+                heartbeatTask.cancel(false);
+            }
+            if (heartbeatMillis > 0) {
+                heartbeatTask = connectionExecutor.scheduleWithFixedDelay(this::heartbeat,
+                        heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+            }
+            stateLock.notifyAll();
+        }
+        notifyConnection(true);
+    }
+
+    /**
+     * The socket closed or never opened; fail what was in flight and try again later
+     */
+    private void onSessionLost(WebSocketClient client, String reason) {
+        boolean wasConnected;
+        synchronized (stateLock) {
+            if (client != wsClient || state == ConnectionState.CLOSED || state == ConnectionState.RECONNECTING) {
+                return;
+            }
+            wasConnected = state == ConnectionState.CONNECTED;
+            if (heartbeatTask != null) {
+                heartbeatTask.cancel(false);
+                heartbeatTask = null;
+            }
+        }
+        failSentRequests(reason);
+        if (wasConnected) {
+            notifyConnection(false);
+        }
+        scheduleReconnect();
+    }
+
+    /**
+     * Next attempt after min(max, initial * 2^attempts), with the upper half randomised so
+     * clients do not retry in lockstep
+     */
+    private void scheduleReconnect() {
+        synchronized (stateLock) {
+            if (state == ConnectionState.CLOSED) {
+                return;
+            }
+            state = ConnectionState.RECONNECTING;
+            stateLock.notifyAll();
+            long ceiling = Math.min(reconnectMaxMillis, reconnectInitialMillis << Math.min(reconnectAttempts, 20));
+            long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+            reconnectAttempts++;
+            reconnectTask = connectionExecutor.schedule(() -> {
+                synchronized (stateLock) {
+                    if (state != ConnectionState.RECONNECTING) {
+                        return;
+                    }
+                    state = ConnectionState.CONNECTING;
+                    reconnectTask = null;
+                }
+                openSession();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cheap request proving OBS still answers; a missed deadline drops the session so it is rebuilt
+     */
+    private void heartbeat() {
+        WebSocketClient client = wsClient;
+        synchronized (stateLock) {
+            if (state != ConnectionState.CONNECTED || heartbeatInFlight) {
+                return;
+            }
+            heartbeatInFlight = true;
+        }
+        request("GetVersion", Map.of(), Duration.ofMillis(heartbeatMillis)).whenComplete((version, error) -> {
+            synchronized (stateLock) {
+                heartbeatInFlight = false;
+            }
+            if (error instanceof OBSRequestException failure && failure.getReason() == OBSRequestException.Reason.TIMEOUT
+                    && client == wsClient) {
+                System.err.println("OBS stopped answering, reconnecting");
+                client.close();
+            }
+        });
+    }
+
+    /**
+     * Identify message answering the server's Hello, authenticated when OBS asks for it
+     */
+    private Map<String, Object> identify(Map<?, ?> hello) throws NoSuchAlgorithmException {
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("rpcVersion", 1);
+        d.put("eventSubscriptions", eventSubscriptions);
+        if (hello.get("authentication") instanceof Map<?, ?> auth && password != null && !password.isEmpty()) {
+            String secret = sha256Base64(password + auth.get("salt"));
+            d.put("authentication", sha256Base64(secret + auth.get("challenge")));
+        }
+        return Map.of("op", 1, "d", d);
+    }
+
+    /**
+     * Choose the event categories OBS sends, a combination of the EVENTS_ constants; applied
+     * right away with a Reidentify when already connected
+     */
+    public void setEventSubscriptions(int eventSubscriptions) {
+        this.eventSubscriptions = eventSubscriptions;
+        WebSocketClient client = wsClient;
+        if (client != null && isConnected()) {
+            try {
+                client.send(objectMapper.writeValueAsString(
+                        Map.of("op", 3, "d", Map.of("eventSubscriptions", eventSubscriptions))));
+            } catch (Exception e) {
+                System.err.println("Failed to update OBS event subscriptions: " + e.getMessage());
+            }
+        }
+    }
+
+    public int getEventSubscriptions() {
+        return eventSubscriptions;
+    }
+
+    /**
+     * Receive the eventData of every event of this type, e.g. "RecordStateChanged"
+     */
+    public void addEventListener(String eventType, Consumer<Map<?, ?>> listener) {
+        eventListeners.computeIfAbsent(eventType, type -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeEventListener(String eventType, Consumer<Map<?, ?>> listener) {
+        List<Consumer<Map<?, ?>>> listeners = eventListeners.get(eventType);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Be told when a session with OBS is established (true) or the socket closes (false)
+     */
+    public void addConnectionListener(Consumer<Boolean> listener) {
+        connectionListeners.add(listener);
+    }
+
+    private void dispatchEvent(Map<?, ?> d) {
+        List<Consumer<Map<?, ?>>> listeners = eventListeners.get(String.valueOf(d.get("eventType")));
+        if (listeners == null) {
+            return;
+        }
+        Map<?, ?> eventData = d.get("eventData") instanceof Map<?, ?> data ? data : Map.of();
+        for (Consumer<Map<?, ?>> listener : listeners) {
+            try {
+                listener.accept(eventData);
+            } catch (Exception e) {
+                System.err.println("OBS " + d.get("eventType") + " listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void notifyConnection(boolean connected) {
+        for (Consumer<Boolean> listener : connectionListeners) {
+            try {
+                listener.accept(connected);
+            } catch (Exception e) {
+                System.err.println("OBS connection listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String sha256Base64(String text) throws NoSuchAlgorithmException {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * Send a request with the obs.request.timeout.ms deadline
+     *
+     * @return completes with the responseData (empty when the request has none), or fails
+     *         with {@link OBSRequestException}
+     */
+    public CompletableFuture<Map<?, ?>> request(String requestType, Map<String, Object> requestData) {
+        return request(requestType, requestData, defaultTimeout);
+    }
+
+    /**
+     * Send a request without waiting for earlier ones to be answered
+     */
+    public CompletableFuture<Map<?, ?>> request(String requestType, Map<String, Object> requestData, Duration timeout) {
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("requestType", requestType);
+        if (requestData != null && !requestData.isEmpty()) {
+            d.put("requestData", requestData);
+        }
+
+        CompletableFuture<Map<?, ?>> result = new CompletableFuture<>();
+        send(6, requestType, d, timeout).whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            StepResult step = toStepResult(requestType, response);
+            if (step.isSuccess()) {
+                result.complete(step.getResponseData());
+            } else {
+                result.completeExceptionally(new OBSRequestException(requestType, OBSRequestException.Reason.REJECTED,
+                        step.getStatusCode(), "code " + step.getStatusCode()
+                                + (step.getComment() != null ? ", " + step.getComment() : "")));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send several requests as one RequestBatch, answered in a single round trip
+     *
+     * @param haltOnFailure stop at the first failed request; the rest are reported as not run
+     * @return one result per step, in order; fails with {@link OBSRequestException} only when
+     *         the batch as a whole timed out or could not be sent
+     */
+    public CompletableFuture<List<StepResult>> requestBatch(List<BatchStep> steps, boolean haltOnFailure,
+                                                            ExecutionType executionType) {
+        List<Map<String, Object>> requests = new ArrayList<>();
+        for (BatchStep step : steps) {
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("requestType", step.requestType);
+            if (step.requestData != null && !step.requestData.isEmpty()) {
+                request.put("requestData", step.requestData);
+            }
+            requests.add(request);
+        }
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("haltOnFailure", haltOnFailure);
+        d.put("executionType", executionType.code);
+        d.put("requests", requests);
+
+        return send(8, "RequestBatch", d, defaultTimeout).thenApply(response -> {
+            List<?> results = response.get("results") instanceof List<?> list ? list : List.of();
+            List<StepResult> stepResults = new ArrayList<>();
+            for (int i = 0; i < steps.size(); i++) {
+                String requestType = steps.get(i).requestType;
+                if (i < results.size() && results.get(i) instanceof Map<?, ?> result) {
+                    stepResults.add(toStepResult(requestType, result));
+                } else {
+                    stepResults.add(new StepResult(requestType, false, false, 0, null, Map.of()));
+                }
+            }
+            return stepResults;
+        });
+    }
+
+    /**
+     * Register a request ID, send the message, or queue it while reconnecting, and arm its deadline
+     *
+     * @param d message data without the requestId, which is added here
+     */
+    private CompletableFuture<Map<?, ?>> send(int op, String requestType, Map<String, Object> d, Duration timeout) {
+        String requestId = "req-" + requestCounter.incrementAndGet();
+        d.put("requestId", requestId);
+        PendingRequest pending;
+        try {
+            pending = new PendingRequest(requestType, objectMapper.writeValueAsString(Map.of("op", op, "d", d)));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        synchronized (stateLock) {
+            if (state == ConnectionState.IDLE || state == ConnectionState.CLOSED) {
+                return CompletableFuture.failedFuture(new OBSRequestException(requestType,
+                        OBSRequestException.Reason.DISCONNECTED, 0, null));
+            }
+            pendingRequests.put(requestId, pending);
+            if (state == ConnectionState.CONNECTED) {
+                transmit(wsClient, requestId, pending);
+            } else {
+                queuedRequests.add(requestId);
+            }
+        }
+
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> expireRequest(requestId, timeout));
+        return pending.response;
+    }
+
+    private void transmit(WebSocketClient client, String requestId, PendingRequest pending) {
+        try {
+            pending.sentNanos = System.nanoTime();
+            pending.sent = true;
+            client.send(pending.message);
+        } catch (Exception e) {
+            pendingRequests.remove(requestId);
+            pending.response.completeExceptionally(new OBSRequestException(pending.requestType,
+                    OBSRequestException.Reason.DISCONNECTED, 0, e.getMessage()));
+        }
+    }
+
+    private void completeRequest(Map<?, ?> d) {
+        PendingRequest pending = pendingRequests.remove(String.valueOf(d.get("requestId")));
+        if (pending == null) {
+            // Already expired
+            return;
+        }
+        latencyFor(pending.requestType).record(System.nanoTime() - pending.sentNanos);
+        pending.response.complete(d);
+    }
+
+    private static StepResult toStepResult(String requestType, Map<?, ?> response) {
+        Map<?, ?> status = response.get("requestStatus") instanceof Map<?, ?> map ? map : Map.of();
+        boolean success = Boolean.TRUE.equals(status.get("result"));
+        int code = status.get("code") instanceof Number number ? number.intValue() : 0;
+        String comment = status.get("comment") instanceof String text ? text : null;
+        Map<?, ?> data = response.get("responseData") instanceof Map<?, ?> map ? map : Map.of();
+        return new StepResult(requestType, true, success, code, comment, data);
+    }
+
+    private void expireRequest(String requestId, Duration timeout) {
+        PendingRequest pending = pendingRequests.remove(requestId);
+        if (pending != null) {
+            latencyFor(pending.requestType).recordTimeout();
+            pending.response.completeExceptionally(new OBSRequestException(pending.requestType,
+                    OBSRequestException.Reason.TIMEOUT, 0, "no response within " + timeout.toMillis() + " ms"));
+        }
+    }
+
+    /**
+     * Fail the requests OBS may already have received; queued ones wait for the next session
+     */
+    private void failSentRequests(String reason) {
+        for (Map.Entry<String, PendingRequest> entry : pendingRequests.entrySet()) {
+            PendingRequest pending = entry.getValue();
+            if (pending.sent && pendingRequests.remove(entry.getKey(), pending)) {
+                pending.response.completeExceptionally(new OBSRequestException(pending.requestType,
+                        OBSRequestException.Reason.DISCONNECTED, 0, "connection closed: " + reason));
+            }
+        }
+    }
+
+    private LatencyHistogram latencyFor(String requestType) {
+        return latencies.computeIfAbsent(requestType, type -> new LatencyHistogram());
+    }
+
+    /**
+     * Requests sent and not yet answered
+     */
+    public int getInFlightCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Response times by request type, sorted by name
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    /**
+     * End the session for good and fail everything still waiting
+     */
+    public void close() {
+        synchronized (stateLock) {
+            state = ConnectionState.CLOSED;
+            if (reconnectTask != null) {
+                reconnectTask.cancel(false);
+            }
+            stateLock.notifyAll();
+        }
+        connectionExecutor.shutdownNow();
+        WebSocketClient client = wsClient;
+        if (client != null) {
+            client.close();
+        }
+        queuedRequests.clear();
+        for (String requestId : pendingRequests.keySet()) {
+            PendingRequest pending = pendingRequests.remove(requestId);
+            if (pending != null) {
+                pending.response.completeExceptionally(new OBSRequestException(pending.requestType,
+                        OBSRequestException.Reason.DISCONNECTED, 0, "client closed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+import com.screenrecorder.model.EncoderProfile;
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Re-encodes a long recording as several chunks in parallel FFmpeg processes.
+ *
+ * A single libx264 process stops scaling after a handful of threads, so on many-core machines
+ * the source is split at keyframes with stream copy, each chunk is encoded by its own
+ * process with a few threads, and the encoded chunks are joined again with stream copy.
+ * Chunks start on keyframes and are encoded independently, so the join needs no re-encode.
+ */
+public class ParallelChunkTranscoder {
+    private static final String CHUNK_EXTENSION = ".mkv";
+    private static final int MIN_CHUNK_SECONDS = 30;
+
+    private final int encoderCount;
+    private final int threadsPerEncoder;
+    private final SegmentConcatenator concatenator = new SegmentConcatenator();
+    private final List<FFmpegProcessRunner> runners = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Size the encoders from the available cores and performance.transcode.threads.per.encoder
+     */
+    public ParallelChunkTranscoder() {
+        this(Runtime.getRuntime().availableProcessors(),
+                ApplicationProperties.getInt("performance.transcode.threads.per.encoder", 4));
+    }
+
+    /**
+     * @param cores CPU cores to use
+     * @param threadsPerEncoder encoder threads per FFmpeg process
+     */
+    public ParallelChunkTranscoder(int cores, int threadsPerEncoder) {
+        this.threadsPerEncoder = Math.max(1, threadsPerEncoder);
+        this.encoderCount = Math.max(1, cores / this.threadsPerEncoder);
+    }
+
+    /**
+     * Whether splitting pays off for a recording of this length on this machine
+     */
+    public boolean isWorthwhile(long durationMicros) {
+        long minimumMicros = ApplicationProperties.getInt("performance.transcode.parallel.min.duration", 600) * 1_000_000L;
+        return encoderCount > 1 && durationMicros >= minimumMicros;
+    }
+
+    public int getEncoderCount() {
+        return encoderCount;
+    }
+
+    /**
+     * Transcode source into output
+     *
+     * @param outputArguments extra muxer options for the final file, e.g. "-movflags +faststart"
+     * @param durationMicros source duration, used to size the chunks and report progress
+     * @param progressListener receives values between 0 and 1, may be null
+     * @return how long the transcode took
+     * @throws InterruptedException when {@link #cancel()} was called
+     */
+    public Duration transcode(File source, File output, EncoderProfile profile, List<String> outputArguments,
+                              long durationMicros, DoubleConsumer progressListener)
+            throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        File chunkDirectory = new File(output.getParentFile(), output.getName() + ".chunks");
+        if (!chunkDirectory.mkdirs() && !chunkDirectory.isDirectory()) {
+            throw new IOException("Cannot create " + chunkDirectory);
+        }
+
+        try {
+            List<File> chunks = split(source, chunkDirectory, durationMicros);
+            report(progressListener, 0.05);
+
+            List<File> encoded = encodeChunks(chunks, profile, fraction -> report(progressListener, 0.05 + fraction * 0.9));
+
+            checkCancelled();
+            concatenator.concat(encoded, output, outputArguments, durationMicros, null);
+            report(progressListener, 1.0);
+        } finally {
+            deleteDirectory(chunkDirectory);
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+        System.out.println("Transcoded " + source.getName() + " with " + encoderCount + " encoders in "
+                + elapsed.toSeconds() + " s");
+        return elapsed;
+    }
+
+    /**
+     * Kill all running processes; {@link #transcode} then throws InterruptedException
+     */
+    public void cancel() {
+        cancelled = true;
+        for (FFmpegProcessRunner runner : runners) {
+            runner.cancel();
+        }
+    }
+
+    /**
+     * Split at keyframes with stream copy. The segment muxer only cuts on keyframes, so chunks
+     * are roughly, not exactly, the requested length.
+     */
+    private List<File> split(File source, File chunkDirectory, long durationMicros)
+            throws IOException, InterruptedException {
+        // Two chunks per encoder keeps all encoders busy when chunks take uneven time
+        long chunkSeconds = Math.max(MIN_CHUNK_SECONDS, durationMicros / 1_000_000L / (encoderCount * 2L));
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-y");
+        arguments.add("-i");
+        arguments.add(source.getAbsolutePath());
+        arguments.add("-map");
+        arguments.add("0");
+        arguments.add("-c");
+        arguments.add("copy");
+        arguments.add("-f");
+        arguments.add("segment");
+        arguments.add("-segment_time");
+        arguments.add(String.valueOf(chunkSeconds));
+        arguments.add("-reset_timestamps");
+        arguments.add("1");
+        arguments.add(new File(chunkDirectory, "chunk_%05d" + CHUNK_EXTENSION).getAbsolutePath());
+        runProcess(arguments, "Split");
+
+        File[] chunks = chunkDirectory.listFiles((dir, name) -> name.startsWith("chunk_") && name.endsWith(CHUNK_EXTENSION));
+        if (chunks == null || chunks.length == 0) {
+            throw new IOException("Split produced no chunks");
+        }
+        Arrays.sort(chunks);
+        return List.of(chunks);
+    }
+
+    private List<File> encodeChunks(List<File> chunks, EncoderProfile profile, DoubleConsumer progressListener)
+            throws IOException, InterruptedException {
+        long totalBytes = 0;
+        for (File chunk : chunks) {
+            totalBytes += chunk.length();
+        }
+        long total = Math.max(1, totalBytes);
+        double[] chunkProgress = new double[chunks.size()];
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService encoders = Executors.newFixedThreadPool(Math.min(encoderCount, chunks.size()), r -> {
+            Thread thread = new Thread(r, "chunk-encoder-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                int index = i;
+                File chunk = chunks.get(i);
+                results.add(encoders.submit(() -> {
+                    File encoded = new File(chunk.getParentFile(), "encoded_" + chunk.getName());
+                    List<String> arguments = new ArrayList<>(List.of("-y", "-i", chunk.getAbsolutePath(), "-map", "0"));
+                    arguments.addAll(profile.toArguments());
+                    arguments.addAll(List.of("-c:a", "copy", "-threads", String.valueOf(threadsPerEncoder),
+                            encoded.getAbsolutePath()));
+
+                    // Chunk lengths are not known exactly, so weight progress by chunk size
+                    double weight = (double) chunk.length() / total;
+                    runProcess(arguments, "Chunk " + index);
+                    synchronized (chunkProgress) {
+                        chunkProgress[index] = weight;
+                        double sum = 0;
+                        for (double value : chunkProgress) {
+                            sum += value;
+                        }
+                        report(progressListener, Math.min(1.0, sum));
+                    }
+                    Files.deleteIfExists(chunk.toPath());
+                    return encoded;
+                }));
+            }
+
+            List<File> encoded = new ArrayList<>();
+            for (Future<File> result : results) {
+                try {
+                    encoded.add(result.get());
+                } catch (ExecutionException e) {
+                    // One failed chunk fails the whole transcode
+                    cancel();
+                    Throwable cause = e.getCause();
+                    if (cause instanceof InterruptedException interrupted) {
+                        throw interrupted;
+                    }
+                    throw cause instanceof IOException io ? io : new IOException(cause);
+                }
+            }
+            return encoded;
+        } finally {
+            encoders.shutdownNow();
+        }
+    }
+
+    private void runProcess(List<String> arguments, String label) throws IOException, InterruptedException {
+        checkCancelled();
+        FFmpegProcessRunner runner = new FFmpegProcessRunner(arguments);
+        runner.setLowPriority(true);
+        runners.add(runner);
+        try {
+            if (cancelled) {
+                runner.cancel();
+            }
+            int exitCode = runner.run(0, null);
+            if (exitCode != 0) {
+                throw new IOException(label + " failed (exit " + exitCode + "): " + runner.getErrorOutput());
+            }
+        } finally {
+            runners.remove(runner);
+        }
+    }
+
+    private void checkCancelled() throws InterruptedException {
+        if (cancelled) {
+            throw new InterruptedException("Transcode cancelled");
+        }
+    }
+
+    private static void report(DoubleConsumer progressListener, double fraction) {
+        if (progressListener != null) {
+            progressListener.accept(fraction);
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.screenrecorder.model.EncoderProfile;
+
+/**
+ * One step of the post-processing pipeline of a finished recording.
+ *
+ * A job starts once all of its dependencies have succeeded; its input is the output of the
+ * first dependency, or the recording itself when it has none.
+ */
+public class PostProcessingJob {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    public enum Type {
+        REMUX,
+        FASTSTART,
+        TRANSCODE,
+        THUMBNAIL,
+        CHECKSUM
+    }
+
+    public enum Priority {
+        /** Runs even while capturing, throttled to a single low-priority thread */
+        HIGH,
+        /** Paused while capturing */
+        NORMAL,
+        /** Paused while capturing, runs after NORMAL jobs */
+        LOW
+    }
+
+    public enum State {
+        WAITING,
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Priority priority;
+    private final File source;
+    private final File output;
+    private final List<PostProcessingJob> dependencies;
+    private final CompletableFuture<File> result = new CompletableFuture<>();
+
+    private EncoderProfile encoderProfile;
+    private long durationMicros;
+    private boolean deleteInputOnSuccess;
+
+    private volatile State state = State.WAITING;
+    private volatile double progress;
+    private volatile boolean cancelRequested;
+    private volatile boolean preempted;
+    private volatile Runnable canceller;
+
+    /**
+     * @param source input when the job has no dependencies
+     * @param output file the job produces (for CHECKSUM and THUMBNAIL, the side file)
+     */
+    public PostProcessingJob(Type type, Priority priority, File source, File output,
+                             List<PostProcessingJob> dependencies) {
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.type = type;
+        this.priority = priority;
+        this.source = source;
+        this.output = output;
+        this.dependencies = List.copyOf(dependencies);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public List<PostProcessingJob> getDependencies() {
+        return dependencies;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Fraction complete, between 0 and 1
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * Completes with the job output, or exceptionally when the job fails or is cancelled
+     */
+    public CompletableFuture<File> getResult() {
+        return result;
+    }
+
+    public EncoderProfile getEncoderProfile() {
+        return encoderProfile;
+    }
+
+    /**
+     * Encoder settings for TRANSCODE jobs
+     */
+    public void setEncoderProfile(EncoderProfile encoderProfile) {
+        this.encoderProfile = encoderProfile;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    /**
+     * Expected media duration, used for progress reporting
+     */
+    public void setDurationMicros(long durationMicros) {
+        this.durationMicros = durationMicros;
+    }
+
+    public boolean isDeleteInputOnSuccess() {
+        return deleteInputOnSuccess;
+    }
+
+    /**
+     * Delete the input once the output has been written (intermediate captures)
+     */
+    public void setDeleteInputOnSuccess(boolean deleteInputOnSuccess) {
+        this.deleteInputOnSuccess = deleteInputOnSuccess;
+    }
+
+    /**
+     * Cancel the job; a running FFmpeg process is killed. Dependent jobs fail as well.
+     */
+    public void cancel() {
+        cancelRequested = true;
+        Runnable current = canceller;
+        if (current != null) {
+            current.run();
+        }
+        if (state == State.WAITING || state == State.QUEUED) {
+            state = State.CANCELLED;
+            result.completeExceptionally(new CancellationException(type + " cancelled"));
+        }
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * The input of this job: the output of its first dependency, or the source recording
+     */
+    File resolveInput() {
+        return dependencies.isEmpty() ? source : dependencies.get(0).getResult().join();
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void setProgress(double progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * How to stop the work in progress, typically killing the FFmpeg process(es)
+     */
+    void setCanceller(Runnable canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * Stop the running process so the job can be re-queued after the capture ends
+     */
+    void preempt() {
+        preempted = true;
+        Runnable current = canceller;
+        if (current != null) {
+            current.run();
+        }
+    }
+
+    boolean isPreempted() {
+        return preempted;
+    }
+
+    boolean consumePreempted() {
+        boolean wasPreempted = preempted;
+        preempted = false;
+        return wasPreempted;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + output.getName() + " [" + state + ", " + Math.round(progress * 100) + "%]";
+    }
+}
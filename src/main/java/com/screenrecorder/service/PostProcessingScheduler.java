@@ -0,0 +1,401 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.screenrecorder.model.EncoderProfile;
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Runs post-processing jobs (remux, faststart, transcode, thumbnail, checksum) for finished
+ * recordings.
+ *
+ * Jobs form a DAG per recording and run on a pool of performance.thread.pool.size workers,
+ * ordered by priority class. While any capture is active only HIGH jobs are started, each on
+ * a single low-priority thread; running NORMAL and LOW jobs are stopped and re-queued so that
+ * background work never competes with a live recording.
+ */
+public class PostProcessingScheduler {
+    private final ExecutorService workers;
+    private final int poolSize;
+    private final Object lock = new Object();
+    private final PriorityQueue<PostProcessingJob> ready = new PriorityQueue<>(
+            Comparator.comparing(PostProcessingJob::getPriority).thenComparingLong(PostProcessingJob::getSequence));
+    private final List<PostProcessingJob> running = new ArrayList<>();
+    private final List<PostProcessingJob> jobs = new CopyOnWriteArrayList<>();
+    private final List<Consumer<PostProcessingJob>> jobListeners = new CopyOnWriteArrayList<>();
+    private final Consumer<Boolean> captureListener = this::onCaptureActivityChanged;
+    private boolean shutdown;
+
+    public PostProcessingScheduler() {
+        this.poolSize = Math.max(1, ApplicationProperties.getInt("performance.thread.pool.size", 4));
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "post-processing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        CaptureActivity.addListener(captureListener);
+    }
+
+    /**
+     * Schedule the standard pipeline for a finished recording:
+     * transcode or remux (or faststart for MP4 input), then thumbnail and checksum.
+     *
+     * @param recording the finished recording
+     * @param durationMicros its duration, for progress reporting; 0 if unknown
+     * @param transcodeProfile re-encode with these settings, or null to keep the video as-is
+     * @param finalOutput destination of the transcode; ignored without a transcode profile
+     * @return the scheduled jobs in dependency order
+     */
+    public List<PostProcessingJob> schedulePipeline(File recording, long durationMicros,
+                                                    EncoderProfile transcodeProfile, File finalOutput) {
+        List<PostProcessingJob> pipeline = new ArrayList<>();
+        PostProcessingJob head;
+
+        if (transcodeProfile != null) {
+            head = new PostProcessingJob(PostProcessingJob.Type.TRANSCODE, PostProcessingJob.Priority.NORMAL,
+                    recording, finalOutput, List.of());
+            head.setEncoderProfile(transcodeProfile);
+            head.setDeleteInputOnSuccess(true);
+        } else if (!recording.getName().toLowerCase().endsWith(".mp4")) {
+            head = new PostProcessingJob(PostProcessingJob.Type.REMUX, PostProcessingJob.Priority.NORMAL,
+                    recording, replaceExtension(recording, ".mp4"), List.of());
+        } else {
+            head = new PostProcessingJob(PostProcessingJob.Type.FASTSTART, PostProcessingJob.Priority.NORMAL,
+                    recording, recording, List.of());
+        }
+        head.setDurationMicros(durationMicros);
+        pipeline.add(head);
+
+        File finalFile = head.getOutput();
+        pipeline.add(new PostProcessingJob(PostProcessingJob.Type.THUMBNAIL, PostProcessingJob.Priority.LOW,
+                finalFile, replaceExtension(finalFile, ".jpg"), List.of(head)));
+        pipeline.add(new PostProcessingJob(PostProcessingJob.Type.CHECKSUM, PostProcessingJob.Priority.LOW,
+                finalFile, new File(finalFile.getParentFile(), finalFile.getName() + ".sha256"), List.of(head)));
+
+        for (PostProcessingJob job : pipeline) {
+            submit(job);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Submit a job; it is queued once all of its dependencies have succeeded
+     *
+     * @throws RejectedExecutionException after {@link #shutdown()}
+     */
+    public PostProcessingJob submit(PostProcessingJob job) {
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Post-processing scheduler is shut down");
+            }
+        }
+        jobs.add(job);
+        notifyListeners(job);
+
+        CompletableFuture<?>[] dependencyResults = job.getDependencies().stream()
+                .map(PostProcessingJob::getResult)
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(dependencyResults).whenComplete((ignored, error) -> {
+            if (error != null) {
+                job.cancel();
+                notifyListeners(job);
+            } else {
+                enqueue(job);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Listen for job state and progress changes (called on worker threads)
+     */
+    public void addJobListener(Consumer<PostProcessingJob> listener) {
+        jobListeners.add(listener);
+    }
+
+    /**
+     * Snapshot of all jobs submitted so far
+     */
+    public List<PostProcessingJob> getJobs() {
+        return List.copyOf(jobs);
+    }
+
+    /**
+     * Number of jobs that have not finished yet
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (PostProcessingJob job : jobs) {
+            PostProcessingJob.State state = job.getState();
+            if (state == PostProcessingJob.State.WAITING || state == PostProcessingJob.State.QUEUED
+                    || state == PostProcessingJob.State.RUNNING) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Stop accepting work and cancel everything not yet finished
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        CaptureActivity.removeListener(captureListener);
+        for (PostProcessingJob job : jobs) {
+            job.cancel();
+        }
+        workers.shutdown();
+    }
+
+    private void enqueue(PostProcessingJob job) {
+        synchronized (lock) {
+            if (job.isCancelRequested() || shutdown) {
+                job.cancel();
+                return;
+            }
+            job.setState(PostProcessingJob.State.QUEUED);
+            ready.add(job);
+            dispatch();
+        }
+        notifyListeners(job);
+    }
+
+    /**
+     * Start queued jobs while workers are free and capture activity allows it. Caller holds the lock.
+     */
+    private void dispatch() {
+        while (!shutdown && running.size() < poolSize && !ready.isEmpty()) {
+            PostProcessingJob next = ready.peek();
+            if (CaptureActivity.isActive() && next.getPriority() != PostProcessingJob.Priority.HIGH) {
+                // The queue is ordered by priority, so nothing behind this job may run either
+                break;
+            }
+            ready.poll();
+            if (next.isCancelRequested()) {
+                continue;
+            }
+            next.setState(PostProcessingJob.State.RUNNING);
+            running.add(next);
+            workers.execute(() -> execute(next));
+        }
+    }
+
+    private void onCaptureActivityChanged(boolean active) {
+        synchronized (lock) {
+            if (active) {
+                for (PostProcessingJob job : running) {
+                    if (job.getPriority() != PostProcessingJob.Priority.HIGH) {
+                        System.out.println("Capture started, pausing " + job);
+                        job.preempt();
+                    }
+                }
+            } else {
+                dispatch();
+            }
+        }
+    }
+
+    private void execute(PostProcessingJob job) {
+        notifyListeners(job);
+        boolean requeued = false;
+        try {
+            File output = runJob(job);
+            job.setProgress(1.0);
+            job.setState(PostProcessingJob.State.SUCCEEDED);
+            job.getResult().complete(output);
+            System.out.println("Post-processing done: " + job);
+        } catch (InterruptedException e) {
+            if (job.consumePreempted() && !job.isCancelRequested()) {
+                // Stopped for a live capture - run again from the start later
+                job.setProgress(0);
+                job.setState(PostProcessingJob.State.QUEUED);
+                requeued = true;
+            } else {
+                job.setState(PostProcessingJob.State.CANCELLED);
+                job.getResult().completeExceptionally(new CancellationException(job.getType() + " cancelled"));
+            }
+        } catch (Exception e) {
+            System.err.println("Post-processing failed: " + job + ": " + e.getMessage());
+            job.setState(PostProcessingJob.State.FAILED);
+            job.getResult().completeExceptionally(e);
+        } finally {
+            job.setCanceller(null);
+            synchronized (lock) {
+                running.remove(job);
+                if (requeued) {
+                    ready.add(job);
+                }
+                dispatch();
+            }
+            notifyListeners(job);
+        }
+    }
+
+    private File runJob(PostProcessingJob job) throws IOException, InterruptedException {
+        File input = job.resolveInput();
+        File output = job.getOutput();
+
+        switch (job.getType()) {
+            case REMUX -> runFFmpeg(job, List.of("-y", "-i", input.getAbsolutePath(), "-map", "0",
+                    "-c", "copy", "-movflags", "+faststart", output.getAbsolutePath()));
+            case FASTSTART -> {
+                File temp = new File(output.getParentFile(), output.getName() + ".faststart.tmp.mp4");
+                if (Mp4Defragmenter.isFragmented(input)) {
+                    defragment(job, input, temp);
+                } else {
+                    runFFmpeg(job, List.of("-y", "-i", input.getAbsolutePath(), "-map", "0",
+                            "-c", "copy", "-movflags", "+faststart", temp.getAbsolutePath()));
+                }
+                Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            case TRANSCODE -> {
+                ParallelChunkTranscoder chunked = new ParallelChunkTranscoder();
+                if (!CaptureActivity.isActive() && chunked.isWorthwhile(job.getDurationMicros())) {
+                    runChunked(job, chunked, input, output);
+                    break;
+                }
+                List<String> arguments = new ArrayList<>(List.of("-y", "-i", input.getAbsolutePath(), "-map", "0"));
+                arguments.addAll(job.getEncoderProfile().toArguments());
+                arguments.addAll(List.of("-c:a", "copy", "-movflags", "+faststart",
+                        "-threads", String.valueOf(getThreadsPerJob()), output.getAbsolutePath()));
+                runFFmpeg(job, arguments);
+            }
+            case THUMBNAIL -> runFFmpeg(job, List.of("-y", "-ss", "1", "-i", input.getAbsolutePath(),
+                    "-frames:v", "1", "-vf", "scale=320:-2", output.getAbsolutePath()));
+            case CHECKSUM -> writeChecksum(job, input, output);
+        }
+
+        if (job.isDeleteInputOnSuccess() && !input.equals(output)) {
+            Files.deleteIfExists(input.toPath());
+        }
+        return output;
+    }
+
+    private void runFFmpeg(PostProcessingJob job, List<String> arguments) throws IOException, InterruptedException {
+        FFmpegProcessRunner runner = new FFmpegProcessRunner(arguments);
+        runner.setLowPriority(true);
+        job.setCanceller(runner::cancel);
+        if (job.isCancelRequested() || job.isPreempted()) {
+            runner.cancel();
+        }
+        int exitCode = runner.run(job.getDurationMicros(), progress -> {
+            job.setProgress(progress);
+            notifyListeners(job);
+        });
+        if (exitCode != 0) {
+            throw new IOException(job.getType() + " failed (exit " + exitCode + "): " + runner.getErrorOutput());
+        }
+    }
+
+    /**
+     * Fragmented recordings are rewritten in Java, a plain copy of the media data
+     */
+    private void defragment(PostProcessingJob job, File input, File output) throws IOException, InterruptedException {
+        Mp4Defragmenter defragmenter = new Mp4Defragmenter();
+        job.setCanceller(defragmenter::cancel);
+        if (job.isCancelRequested() || job.isPreempted()) {
+            defragmenter.cancel();
+        }
+        Duration elapsed = defragmenter.defragment(input, output, progress -> {
+            job.setProgress(progress);
+            notifyListeners(job);
+        });
+        System.out.println("Defragmented " + input.getName() + " in " + elapsed.toMillis() + " ms");
+    }
+
+    /**
+     * Long transcodes are split into chunks encoded in parallel across all cores
+     */
+    private void runChunked(PostProcessingJob job, ParallelChunkTranscoder transcoder, File input, File output)
+            throws IOException, InterruptedException {
+        job.setCanceller(transcoder::cancel);
+        if (job.isCancelRequested() || job.isPreempted()) {
+            transcoder.cancel();
+        }
+        transcoder.transcode(input, output, job.getEncoderProfile(), List.of("-movflags", "+faststart"),
+                job.getDurationMicros(), progress -> {
+                    job.setProgress(progress);
+                    notifyListeners(job);
+                });
+    }
+
+    /**
+     * Write a sha256sum-compatible side file
+     */
+    private void writeChecksum(PostProcessingJob job, File input, File output) throws IOException, InterruptedException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        long total = Math.max(1, input.length());
+        long done = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(input.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (job.isCancelRequested() || job.isPreempted()) {
+                    throw new InterruptedException("Checksum stopped");
+                }
+                digest.update(buffer, 0, read);
+                done += read;
+                job.setProgress((double) done / total);
+            }
+        }
+        String line = HexFormat.of().formatHex(digest.digest()) + "  " + input.getName() + "\n";
+        Files.writeString(output.toPath(), line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encoder threads per job: the cores split across the pool, or one while capturing
+     */
+    private int getThreadsPerJob() {
+        if (CaptureActivity.isActive()) {
+            return 1;
+        }
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / poolSize);
+    }
+
+    private void notifyListeners(PostProcessingJob job) {
+        for (Consumer<PostProcessingJob> listener : jobListeners) {
+            try {
+                listener.accept(job);
+            } catch (Exception e) {
+                System.err.println("Post-processing listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static File replaceExtension(File file, String extension) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), (dot == -1 ? name : name.substring(0, dot)) + extension);
+    }
+}
@@ -0,0 +1,111 @@
+package com.screenrecorder.service;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import com.screenrecorder.model.FFmpegProgress;
+import com.screenrecorder.model.RecordingConfig;
+import com.screenrecorder.model.RecordingResult;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * One recording in a {@link RecordingSessionRegistry}, backed by its own {@link FFmpegService}
+ */
+public class RecordingSession {
+
+    public enum State {
+        STARTING,
+        RECORDING,
+        STOPPING,
+        ENDED,
+        FAILED
+    }
+
+    private final String id;
+    private final RecordingConfig config;
+    private final FFmpegService service;
+    private final int encoderThreads;
+    private final Instant createdAt;
+    private volatile State state = State.STARTING;
+
+    RecordingSession(String id, RecordingConfig config, FFmpegService service, int encoderThreads) {
+        this.id = id;
+        this.config = config;
+        this.service = service;
+        this.encoderThreads = encoderThreads;
+        this.createdAt = Instant.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * The session's own copy of the configuration it was started with
+     */
+    public RecordingConfig getConfig() {
+        return config;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    /**
+     * Encoder threads granted by the governor to the main output
+     */
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Stop this session without blocking; the registry releases it once the output is finalized
+     */
+    public CompletableFuture<RecordingResult> stop() {
+        if (state == State.RECORDING || state == State.STARTING) {
+            state = State.STOPPING;
+        }
+        return service.stopRecording();
+    }
+
+    public void togglePause() {
+        service.togglePause();
+    }
+
+    FFmpegService getService() {
+        return service;
+    }
+
+    // Property getters
+    public BooleanProperty recordingProperty() {
+        return service.recordingProperty();
+    }
+
+    public BooleanProperty pausedProperty() {
+        return service.pausedProperty();
+    }
+
+    public StringProperty statusProperty() {
+        return service.statusProperty();
+    }
+
+    public ObjectProperty<FFmpegProgress> progressProperty() {
+        return service.progressProperty();
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + config.getVideoSource() + ", " + state + ")";
+    }
+}
@@ -0,0 +1,143 @@
+package com.screenrecorder.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.screenrecorder.model.RecordingConfig;
+
+/**
+ * Runs several independent recordings at once, e.g. one per window.
+ *
+ * Every session gets its own {@link FFmpegService}, so process, parts, properties and output
+ * files are never shared; only post-processing is, through one scheduler that keeps finished
+ * recordings waiting while any session is still capturing. Sessions are admitted by a
+ * {@link ResourceGovernor} and leave the registry on their own when their recording ends.
+ */
+public class RecordingSessionRegistry {
+    private final Map<String, RecordingSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCounter = new AtomicInteger();
+    private final ResourceGovernor governor;
+    private final PostProcessingScheduler postProcessor;
+    private volatile boolean shutdown;
+
+    public RecordingSessionRegistry() {
+        this(new ResourceGovernor());
+    }
+
+    public RecordingSessionRegistry(ResourceGovernor governor) {
+        this.governor = governor;
+        this.postProcessor = new PostProcessingScheduler();
+    }
+
+    /**
+     * Start a new session
+     *
+     * @param config copied, so later changes do not affect the running session
+     * @return completes with the running session, or fails with RejectedExecutionException
+     *         when the governor has no room for it, or IllegalStateException when it did not start
+     */
+    public CompletableFuture<RecordingSession> start(RecordingConfig config) {
+        if (shutdown) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Session registry is shut down"));
+        }
+
+        String id = "session-" + sessionCounter.incrementAndGet();
+        RecordingConfig sessionConfig = config.copy();
+        // Sessions started in the same second must not write the same files
+        sessionConfig.setFileNamePrefix(config.getFileNamePrefix() + "_" + id);
+
+        int threads;
+        try {
+            threads = governor.acquire(id, sessionConfig);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        FFmpegService service = new FFmpegService(postProcessor);
+        service.setEncoderThreads(threads);
+        RecordingSession session = new RecordingSession(id, sessionConfig, service, threads);
+        service.addSessionEndListener(() -> end(session));
+        sessions.put(id, session);
+        System.out.println("Starting " + id + " with " + threads + " encoder threads ("
+                + governor.getFreeThreads() + " of " + governor.getCapacity() + " free)");
+
+        return service.startRecording(sessionConfig).thenApply(started -> {
+            if (!started) {
+                end(session);
+                session.setState(RecordingSession.State.FAILED);
+                throw new IllegalStateException("Session " + id + " failed to start");
+            }
+            if (session.getState() == RecordingSession.State.STARTING) {
+                session.setState(RecordingSession.State.RECORDING);
+            }
+            return session;
+        });
+    }
+
+    /**
+     * Release a finished session's threads and drop it from the registry
+     */
+    private void end(RecordingSession session) {
+        if (sessions.remove(session.getId()) == null) {
+            return;
+        }
+        governor.release(session.getId());
+        if (session.getState() != RecordingSession.State.FAILED) {
+            session.setState(RecordingSession.State.ENDED);
+        }
+        session.getService().shutdown();
+    }
+
+    public RecordingSession get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Sessions that have not ended yet
+     */
+    public List<RecordingSession> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stop one session; unknown IDs are ignored
+     */
+    public void stop(String id) {
+        RecordingSession session = sessions.get(id);
+        if (session != null) {
+            session.stop();
+        }
+    }
+
+    public void stopAll() {
+        for (RecordingSession session : getSessions()) {
+            session.stop();
+        }
+    }
+
+    public ResourceGovernor getGovernor() {
+        return governor;
+    }
+
+    public PostProcessingScheduler getPostProcessingScheduler() {
+        return postProcessor;
+    }
+
+    /**
+     * Stop every session and the shared post-processing
+     */
+    public void shutdown() {
+        shutdown = true;
+        stopAll();
+        postProcessor.shutdown();
+    }
+}
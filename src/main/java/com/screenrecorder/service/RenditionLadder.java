@@ -0,0 +1,83 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.screenrecorder.model.Resolution;
+
+/**
+ * Several renditions of one capture from a single FFmpeg process.
+ *
+ * The captured video is decoded once and fanned out with a split filter; each branch is scaled
+ * and encoded as its own output. Proxies therefore cost only their own scale and encode, not a
+ * second read and decode of the recording afterwards.
+ */
+public final class RenditionLadder {
+
+    private RenditionLadder() {
+    }
+
+    /**
+     * Proxies worth encoding next to the main resolution: duplicates and the main size itself are dropped
+     */
+    public static List<Resolution> proxiesFor(Resolution main, List<Resolution> proxies) {
+        List<Resolution> result = new ArrayList<>();
+        for (Resolution proxy : proxies) {
+            if (proxy != null && !proxy.equals(main) && !result.contains(proxy)) {
+                result.add(proxy);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The -filter_complex graph, e.g.
+     * "[0:v]split=3[s0][s1][s2];[s0]scale=1920:1080[v0];[s1]scale=1280:720[v1];[s2]scale=640:360[v2]"
+     *
+     * @param main main resolution, or null to keep the captured size
+     * @param preFilter filter applied once before the split, e.g. "mpdecimate", or null
+     * @return graph whose outputs are labelled [v0] (main) and [v1].. (proxies, in order)
+     */
+    public static String filterGraph(Resolution main, List<Resolution> proxies, String preFilter) {
+        int count = proxies.size() + 1;
+        StringBuilder graph = new StringBuilder("[0:v]");
+        if (preFilter != null) {
+            graph.append(preFilter).append(',');
+        }
+        graph.append("split=").append(count);
+        for (int i = 0; i < count; i++) {
+            graph.append("[s").append(i).append(']');
+        }
+        for (int i = 0; i < count; i++) {
+            Resolution resolution = i == 0 ? main : proxies.get(i - 1);
+            graph.append(";[s").append(i).append(']');
+            if (resolution != null) {
+                graph.append("scale=").append(resolution.getWidth()).append(':').append(resolution.getHeight());
+            } else {
+                graph.append("null");
+            }
+            graph.append(label(i));
+        }
+        return graph.toString();
+    }
+
+    /**
+     * Graph output label of the rendition at this index; 0 is the main rendition
+     */
+    public static String label(int index) {
+        return "[v" + index + "]";
+    }
+
+    /**
+     * File of a proxy rendition next to the main file, "name.mp4" becoming "name_720p.mp4"
+     */
+    public static File proxyFile(File mainFile, Resolution proxy) {
+        String name = mainFile.getName();
+        int dot = name.lastIndexOf('.');
+        String proxyName = dot < 0
+                ? name + "_" + proxy.getName()
+                : name.substring(0, dot) + "_" + proxy.getName() + name.substring(dot);
+        return new File(mainFile.getParentFile(), proxyName);
+    }
+}
@@ -0,0 +1,162 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.screenrecorder.model.SegmentInfo;
+
+/**
+ * Fixed-size ring of short recording segments on disk for "save the last N seconds".
+ *
+ * Closed segments are appended as the segment manifest reports them and the oldest ones are
+ * deleted once the ring is full. Saving a replay pins the selected segments so they cannot be
+ * evicted while they are being joined. The segment still being written is not included, so a
+ * clip ends at most one segment length before the save request.
+ */
+public class ReplayBuffer {
+    private final File directory;
+    private final int capacity;
+    private final Deque<SegmentInfo> ring = new ArrayDeque<>();
+    private final Map<File, Integer> pinned = new HashMap<>();
+    private final Set<File> evictedWhilePinned = new HashSet<>();
+
+    /**
+     * @param directory directory holding the ring segments
+     * @param bufferLength how much recording to keep
+     * @param segmentSeconds length of each segment
+     */
+    public ReplayBuffer(File directory, Duration bufferLength, int segmentSeconds) {
+        this.directory = directory;
+        this.capacity = (int) Math.ceil((double) bufferLength.toSeconds() / segmentSeconds) + 1;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Maximum number of segments kept on disk
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Add a closed segment, evicting the oldest ones beyond capacity
+     */
+    public synchronized void onSegmentClosed(SegmentInfo segment) {
+        ring.addLast(segment);
+        while (ring.size() > capacity) {
+            SegmentInfo oldest = ring.removeFirst();
+            if (pinned.containsKey(oldest.getFile())) {
+                evictedWhilePinned.add(oldest.getFile());
+            } else {
+                delete(oldest.getFile());
+            }
+        }
+    }
+
+    /**
+     * Recorded time currently available in the ring
+     */
+    public synchronized Duration getBufferedDuration() {
+        double seconds = 0;
+        for (SegmentInfo segment : ring) {
+            seconds += Math.max(0, segment.getDurationSeconds());
+        }
+        return Duration.ofMillis(Math.round(seconds * 1000));
+    }
+
+    /**
+     * Join the most recent segments covering the requested duration into a clip
+     *
+     * @return how long the join took
+     */
+    public Duration save(Duration length, File output, SegmentConcatenator concatenator) throws IOException {
+        List<SegmentInfo> selected = pinLatest(length);
+        if (selected.isEmpty()) {
+            throw new IOException("Replay buffer is empty");
+        }
+        try {
+            List<File> files = new ArrayList<>();
+            double seconds = 0;
+            for (SegmentInfo segment : selected) {
+                files.add(segment.getFile());
+                seconds += Math.max(0, segment.getDurationSeconds());
+            }
+            return concatenator.concat(files, output, Math.round(seconds * 1_000_000), null);
+        } finally {
+            unpin(selected);
+        }
+    }
+
+    /**
+     * Delete every segment and the ring directory
+     */
+    public synchronized void discard() {
+        for (SegmentInfo segment : ring) {
+            if (!pinned.containsKey(segment.getFile())) {
+                delete(segment.getFile());
+            }
+        }
+        ring.clear();
+        File[] leftovers = directory.listFiles();
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                if (!pinned.containsKey(file)) {
+                    delete(file);
+                }
+            }
+        }
+        if (pinned.isEmpty()) {
+            delete(directory);
+        }
+    }
+
+    private synchronized List<SegmentInfo> pinLatest(Duration length) {
+        List<SegmentInfo> selected = new ArrayList<>();
+        double remaining = length.toMillis() / 1000.0;
+        Iterator<SegmentInfo> newestFirst = ring.descendingIterator();
+        while (newestFirst.hasNext() && remaining > 0) {
+            SegmentInfo segment = newestFirst.next();
+            selected.add(segment);
+            pinned.merge(segment.getFile(), 1, Integer::sum);
+            remaining -= Math.max(0, segment.getDurationSeconds());
+        }
+        Collections.reverse(selected);
+        return selected;
+    }
+
+    private synchronized void unpin(List<SegmentInfo> segments) {
+        for (SegmentInfo segment : segments) {
+            File file = segment.getFile();
+            if (pinned.merge(file, -1, Integer::sum) > 0) {
+                continue;
+            }
+            pinned.remove(file);
+            if (evictedWhilePinned.remove(file)) {
+                delete(file);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to delete replay segment " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.screenrecorder.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.screenrecorder.model.RecordingConfig;
+import com.screenrecorder.model.Resolution;
+import com.screenrecorder.util.ApplicationProperties;
+
+/**
+ * Splits the machine's cores between concurrent recording sessions.
+ *
+ * Each session reserves the encoder threads it needs to keep up in real time, estimated from
+ * its pixel rate relative to 1080p30 (performance.governor.cores.per.1080p30), plus one thread
+ * per proxy rendition. A session whose reservation does not fit in the free cores is refused
+ * up front: a live encoder that falls behind drops frames, which is worse than not starting.
+ * The only exception is the first session, which is always admitted with whatever fits.
+ */
+public class ResourceGovernor {
+    private static final double REFERENCE_PIXEL_RATE = 1920.0 * 1080 * 30;
+    private static final int CAPTURE_FPS = 30;
+
+    private final int capacity;
+    private final double coresPerReference;
+    private final Map<String, Integer> reservations = new LinkedHashMap<>();
+
+    /**
+     * Capacity from the available cores minus performance.governor.reserved.cores
+     */
+    public ResourceGovernor() {
+        this(Runtime.getRuntime().availableProcessors()
+                        - ApplicationProperties.getInt("performance.governor.reserved.cores", 1),
+                ApplicationProperties.getInt("performance.governor.cores.per.1080p30", 2));
+    }
+
+    /**
+     * @param capacity encoder threads available to all sessions together
+     * @param coresPerReference cores one encoder needs for 1080p at 30 fps
+     */
+    public ResourceGovernor(int capacity, double coresPerReference) {
+        this.capacity = Math.max(1, capacity);
+        this.coresPerReference = coresPerReference;
+    }
+
+    /**
+     * Encoder threads a session with this configuration needs
+     */
+    public int estimateThreads(RecordingConfig config) {
+        return mainThreads(config) + RenditionLadder.proxiesFor(config.getResolution(), config.getProxyResolutions()).size();
+    }
+
+    /**
+     * Threads for the main encoder of the session
+     */
+    public int mainThreads(RecordingConfig config) {
+        Resolution resolution = config.getResolution() != null ? config.getResolution() : Resolution.HD_1080P;
+        double pixelRate = (double) resolution.getWidth() * resolution.getHeight() * CAPTURE_FPS;
+        return Math.max(1, (int) Math.ceil(coresPerReference * pixelRate / REFERENCE_PIXEL_RATE));
+    }
+
+    /**
+     * Reserve threads for a session
+     *
+     * @return encoder threads granted to the session's main encoder
+     * @throws RejectedExecutionException when the session would not fit
+     */
+    public synchronized int acquire(String sessionId, RecordingConfig config) {
+        if (reservations.containsKey(sessionId)) {
+            throw new IllegalStateException("Session " + sessionId + " already holds a reservation");
+        }
+        int required = estimateThreads(config);
+        int free = getFreeThreads();
+        if (required > free && !reservations.isEmpty()) {
+            throw new RejectedExecutionException("Not enough capacity for another recording: needs "
+                    + required + " encoder threads, " + free + " of " + capacity + " free");
+        }
+
+        int granted = Math.min(required, free);
+        reservations.put(sessionId, granted);
+        int proxies = required - mainThreads(config);
+        return Math.max(1, granted - proxies);
+    }
+
+    /**
+     * Return a session's threads; unknown IDs are ignored
+     */
+    public synchronized void release(String sessionId) {
+        reservations.remove(sessionId);
+    }
+
+    public synchronized int getReservedThreads() {
+        int reserved = 0;
+        for (int threads : reservations.values()) {
+            reserved += threads;
+        }
+        return reserved;
+    }
+
+    public synchronized int getFreeThreads() {
+        return Math.max(0, capacity - getReservedThreads());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Whether a session with this configuration would be admitted now
+     */
+    public synchronized boolean canAdmit(RecordingConfig config) {
+        return reservations.isEmpty() || estimateThreads(config) <= getFreeThreads();
+    }
+}
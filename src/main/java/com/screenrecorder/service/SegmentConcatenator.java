@@ -0,0 +1,94 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Joins recording parts into one file with FFmpeg's concat demuxer and stream copy.
+ *
+ * No re-encoding happens, so the cost is bounded by disk throughput. All parts must share
+ * codec parameters, which holds for parts produced by the same recording configuration.
+ */
+public class SegmentConcatenator {
+
+    /**
+     * Concatenate the parts in order into the output file
+     *
+     * @param parts files to join, in playback order
+     * @param output destination file, overwritten if it exists
+     * @param expectedDurationMicros total duration of the parts, 0 if unknown
+     * @param progressListener receives values between 0 and 1, may be null
+     * @return how long the join took
+     */
+    public Duration concat(List<File> parts, File output, long expectedDurationMicros,
+                           DoubleConsumer progressListener) throws IOException {
+        return concat(parts, output, List.of(), expectedDurationMicros, progressListener);
+    }
+
+    /**
+     * Concatenate the parts in order, adding muxer options such as "-movflags +faststart"
+     *
+     * @param outputArguments extra output options placed before the output file
+     */
+    public Duration concat(List<File> parts, File output, List<String> outputArguments,
+                           long expectedDurationMicros, DoubleConsumer progressListener) throws IOException {
+        if (parts.isEmpty()) {
+            throw new IOException("Nothing to concatenate");
+        }
+
+        long started = System.nanoTime();
+        File listFile = new File(output.getParentFile(), output.getName() + ".concat.txt");
+        Files.writeString(listFile.toPath(), buildConcatList(parts), StandardCharsets.UTF_8);
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-y");
+        arguments.add("-f");
+        arguments.add("concat");
+        arguments.add("-safe");
+        arguments.add("0");
+        arguments.add("-i");
+        arguments.add(listFile.getAbsolutePath());
+        arguments.add("-map");
+        arguments.add("0");
+        arguments.add("-c");
+        arguments.add("copy");
+        arguments.addAll(outputArguments);
+        arguments.add(output.getAbsolutePath());
+
+        FFmpegProcessRunner runner = new FFmpegProcessRunner(arguments);
+        try {
+            int exitCode = runner.run(expectedDurationMicros, progressListener);
+            if (exitCode != 0) {
+                throw new IOException("Concat failed (exit " + exitCode + "): " + runner.getErrorOutput());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Concat interrupted", e);
+        } finally {
+            Files.deleteIfExists(listFile.toPath());
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+        System.out.println("Joined " + parts.size() + " part(s) into " + output.getName()
+                + " in " + elapsed.toMillis() + " ms");
+        return elapsed;
+    }
+
+    /**
+     * Build an ffconcat list, quoting paths for the concat demuxer
+     */
+    static String buildConcatList(List<File> parts) {
+        StringBuilder list = new StringBuilder("ffconcat version 1.0\n");
+        for (File part : parts) {
+            String path = part.getAbsolutePath().replace("'", "'\\''");
+            list.append("file '").append(path).append("'\n");
+        }
+        return list.toString();
+    }
+}
@@ -0,0 +1,323 @@
+package com.screenrecorder.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.screenrecorder.model.SegmentInfo;
+
+/**
+ * Tracks the segments of a segmented FFmpeg recording.
+ *
+ * FFmpeg's segment muxer rewrites an M3U8 list every time a segment is closed. This class
+ * follows that list, notifies listeners about each newly closed segment and keeps a JSON
+ * manifest and a session playlist next to it that downstream jobs can read while the
+ * recording is still running. A recording may span several FFmpeg processes (pause/resume,
+ * encoder rollover); each process writes its own part list via {@link #beginPart()}, while
+ * segment numbering, the JSON manifest and the session playlist continue across parts.
+ */
+public class SegmentManifest {
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+
+    private final File outputDirectory;
+    private final File jsonFile;
+    private final String baseName;
+    private final int segmentDurationSeconds;
+    private final ObjectMapper objectMapper;
+
+    private final List<SegmentInfo> segments = new ArrayList<>();
+    private final Set<String> seenFiles = new LinkedHashSet<>();
+    private final List<Consumer<SegmentInfo>> segmentListeners = new CopyOnWriteArrayList<>();
+
+    private final File playlistFile;
+    private File partListFile;
+    private int partCount;
+    private int segmentCount;
+    private int retainedSegments;
+    private ScheduledFuture<?> pollTask;
+    private long lastModified;
+    private long lastLength;
+    private boolean complete;
+
+    public SegmentManifest(File outputDirectory, String baseName, int segmentDurationSeconds) {
+        this.baseName = baseName;
+        this.segmentDurationSeconds = segmentDurationSeconds;
+        this.outputDirectory = outputDirectory;
+        this.jsonFile = new File(outputDirectory, baseName + ".segments.json");
+        this.playlistFile = new File(outputDirectory, baseName + ".m3u8");
+        this.objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * Start a new FFmpeg part and return the M3U8 list it should write via -segment_list.
+     * Call only once the previous part's process has exited.
+     */
+    public synchronized File beginPart() {
+        // Pick up the last segments of the previous part before switching lists
+        finishPartList();
+        partListFile = new File(outputDirectory, baseName + ".part" + partCount + ".m3u8");
+        partCount++;
+        lastModified = 0;
+        lastLength = 0;
+        return partListFile;
+    }
+
+    /**
+     * The session playlist, listing the segments of every part in recording order
+     */
+    public File getPlaylistFile() {
+        return playlistFile;
+    }
+
+    /**
+     * Number of segments closed so far; also the start number for the next part's files
+     */
+    public synchronized int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Keep only the most recent segments in memory, in the JSON manifest and in FFmpeg's list.
+     * Used by rolling buffers that delete old segments; 0 (the default) keeps everything.
+     */
+    public synchronized void setRetainedSegments(int retainedSegments) {
+        this.retainedSegments = retainedSegments;
+    }
+
+    public synchronized int getRetainedSegments() {
+        return retainedSegments;
+    }
+
+    /**
+     * The JSON manifest maintained alongside the playlist
+     */
+    public File getJsonFile() {
+        return jsonFile;
+    }
+
+    /**
+     * Register a listener called (on the polling thread) for every closed segment
+     */
+    public void addSegmentListener(Consumer<SegmentInfo> listener) {
+        segmentListeners.add(listener);
+    }
+
+    /**
+     * Start following the playlist
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        writeJsonManifest();
+        writePlaylist();
+        pollTask = scheduler.scheduleWithFixedDelay(this::poll,
+                POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop following the playlist after picking up the final segments
+     */
+    public synchronized void stop() {
+        if (pollTask != null) {
+            pollTask.cancel(false);
+            pollTask = null;
+        }
+        finishPartList();
+        complete = true;
+        writeJsonManifest();
+        writePlaylist();
+    }
+
+    /**
+     * Read the current part's list one last time and remove it; its entries live on in the
+     * session playlist
+     */
+    private void finishPartList() {
+        if (partListFile == null) {
+            return;
+        }
+        poll();
+        try {
+            Files.deleteIfExists(partListFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to remove part list: " + e.getMessage());
+        }
+        partListFile = null;
+    }
+
+    /**
+     * Snapshot of the segments closed so far, in recording order
+     */
+    public synchronized List<SegmentInfo> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Re-read the playlist if FFmpeg has rewritten it since the last poll
+     */
+    synchronized void poll() {
+        try {
+            if (partListFile == null || !partListFile.exists()) {
+                return;
+            }
+            long modified = partListFile.lastModified();
+            long length = partListFile.length();
+            if (modified == lastModified && length == lastLength) {
+                return;
+            }
+            lastModified = modified;
+            lastLength = length;
+
+            List<SegmentInfo> closed = readNewSegments();
+            if (closed.isEmpty()) {
+                return;
+            }
+            writeJsonManifest();
+            writePlaylist();
+            for (SegmentInfo segment : closed) {
+                System.out.println("Segment closed: " + segment);
+                for (Consumer<SegmentInfo> listener : segmentListeners) {
+                    try {
+                        listener.accept(segment);
+                    } catch (Exception e) {
+                        System.err.println("Segment listener failed: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to read segment list: " + e.getMessage());
+        }
+    }
+
+    private List<SegmentInfo> readNewSegments() throws IOException {
+        List<SegmentInfo> closed = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(partListFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            double pendingDuration = -1;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("#EXTINF:")) {
+                    int comma = line.indexOf(',');
+                    String value = line.substring(8, comma == -1 ? line.length() : comma);
+                    try {
+                        pendingDuration = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        pendingDuration = -1;
+                    }
+                } else if (!line.isEmpty() && !line.startsWith("#")) {
+                    if (seenFiles.add(line)) {
+                        File file = new File(line);
+                        if (!file.isAbsolute()) {
+                            file = new File(partListFile.getParentFile(), line);
+                        }
+                        SegmentInfo segment = new SegmentInfo(segmentCount++, file, pendingDuration,
+                                file.length(), System.currentTimeMillis());
+                        segments.add(segment);
+                        closed.add(segment);
+                        trimRetained();
+                    }
+                    pendingDuration = -1;
+                }
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Drop the oldest entries beyond the retention limit. File names are remembered for twice
+     * as long so entries still listed by FFmpeg are not picked up again.
+     */
+    private void trimRetained() {
+        if (retainedSegments <= 0) {
+            return;
+        }
+        while (segments.size() > retainedSegments) {
+            segments.remove(0);
+        }
+        Iterator<String> oldest = seenFiles.iterator();
+        while (seenFiles.size() > retainedSegments * 2 && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Atomically replace the session playlist with the segments closed so far
+     */
+    private void writePlaylist() {
+        double longest = segmentDurationSeconds;
+        for (SegmentInfo segment : segments) {
+            longest = Math.max(longest, segment.getDurationSeconds());
+        }
+        StringBuilder playlist = new StringBuilder();
+        playlist.append("#EXTM3U\n");
+        playlist.append("#EXT-X-VERSION:3\n");
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:").append(segments.isEmpty() ? segmentCount : segments.get(0).getIndex()).append('\n');
+        playlist.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(longest)).append('\n');
+        for (SegmentInfo segment : segments) {
+            double duration = segment.getDurationSeconds() > 0 ? segment.getDurationSeconds() : segmentDurationSeconds;
+            playlist.append("#EXTINF:").append(String.format(Locale.ROOT, "%.6f", duration)).append(",\n");
+            playlist.append(segment.getFile().getName()).append('\n');
+        }
+        if (complete) {
+            // Players treat the finished recording as a whole file rather than a live stream
+            playlist.append("#EXT-X-ENDLIST\n");
+        }
+
+        try {
+            File tempFile = new File(playlistFile.getParentFile(), playlistFile.getName() + ".tmp");
+            Files.writeString(tempFile.toPath(), playlist, StandardCharsets.UTF_8);
+            Files.move(tempFile.toPath(), playlistFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write session playlist: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Atomically replace the JSON manifest so readers never see a partial file
+     */
+    private void writeJsonManifest() {
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("baseName", baseName);
+        manifest.put("segmentDurationSeconds", segmentDurationSeconds);
+        manifest.put("complete", complete);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (SegmentInfo segment : segments) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("index", segment.getIndex());
+            entry.put("file", segment.getFile().getName());
+            entry.put("durationSeconds", segment.getDurationSeconds());
+            entry.put("sizeBytes", segment.getSizeBytes());
+            entry.put("closedAt", segment.getClosedAtMillis());
+            entries.add(entry);
+        }
+        manifest.put("segments", entries);
+
+        try {
+            File tempFile = new File(jsonFile.getParentFile(), jsonFile.getName() + ".tmp");
+            objectMapper.writeValue(tempFile, manifest);
+            Files.move(tempFile.toPath(), jsonFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write segment manifest: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.screenrecorder.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.screenrecorder.model.RecordingConfig;
+import com.screenrecorder.model.RecordingResult;
+import com.screenrecorder.model.Resolution;
+import com.screenrecorder.model.SegmentInfo;
+
+/**
+ * Write-ahead journal of one recording session, kept next to its output.
+ *
+ * Every event (session start with a configuration snapshot, part start and close, segment
+ * close, stop) is appended as one JSON line and synced to disk before the call returns.
+ * A session that ends normally deletes its journal, so a journal found at startup belongs to
+ * a session that was interrupted and tells {@link SessionRecovery} which files it left behind.
+ * Every directory a journal is created in is listed in an index in the user's home directory,
+ * so recovery also finds sessions recorded outside the default output directory.
+ */
+public class SessionJournal implements Closeable {
+    public static final String EXTENSION = ".journal";
+
+    static final String START = "start";
+    static final String PART_STARTED = "partStarted";
+    static final String PART_CLOSED = "partClosed";
+    static final String SEGMENT_CLOSED = "segmentClosed";
+    static final String STOP = "stop";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final File INDEX_FILE = new File(System.getProperty("user.home"), "screen-recorder-journals.txt");
+
+    private final File file;
+    private FileChannel channel;
+
+    private SessionJournal(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Create the journal for a new session and record its start
+     */
+    public static SessionJournal create(File directory, String baseName, RecordingConfig config) throws IOException {
+        rememberDirectory(directory);
+        SessionJournal journal = new SessionJournal(new File(directory, baseName + EXTENSION));
+        Map<String, Object> start = event(START);
+        start.put("baseName", baseName);
+        start.put("config", snapshot(config));
+        journal.append(start);
+        return journal;
+    }
+
+    /**
+     * The settings recovery needs to finish the session the way it would have ended
+     */
+    private static Map<String, Object> snapshot(RecordingConfig config) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("outputFormat", config.getOutputFormat());
+        snapshot.put("segmentedOutput", config.isSegmentedOutput());
+        snapshot.put("segmentDurationSeconds", config.getSegmentDurationSeconds());
+        snapshot.put("fragmentedOutput", config.isFragmentedOutput());
+        snapshot.put("twoStageEncoding", config.isTwoStageEncoding());
+        snapshot.put("resolution", config.getResolution() != null ? config.getResolution().getName() : null);
+        List<String> proxies = new ArrayList<>();
+        for (Resolution proxy : config.getProxyResolutions()) {
+            proxies.add(proxy.getName());
+        }
+        snapshot.put("proxyResolutions", proxies);
+        snapshot.put("videoSource", config.getVideoSource() != null ? config.getVideoSource().toString() : null);
+        return snapshot;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * FFmpeg was started writing this part file
+     */
+    public void partStarted(File part) {
+        Map<String, Object> event = event(PART_STARTED);
+        event.put("file", part.getName());
+        appendQuietly(event);
+    }
+
+    /**
+     * FFmpeg finished this part file cleanly, so it is playable as it is
+     */
+    public void partClosed(File part) {
+        Map<String, Object> event = event(PART_CLOSED);
+        event.put("file", part.getName());
+        appendQuietly(event);
+    }
+
+    public void segmentClosed(SegmentInfo segment) {
+        Map<String, Object> event = event(SEGMENT_CLOSED);
+        event.put("index", segment.getIndex());
+        event.put("file", segment.getFile().getName());
+        event.put("durationSeconds", segment.getDurationSeconds());
+        appendQuietly(event);
+    }
+
+    /**
+     * Record the end of the session and delete the journal; there is nothing left to recover
+     */
+    public synchronized void stopped(RecordingResult result) {
+        Map<String, Object> event = event(STOP);
+        event.put("success", result.isSuccess());
+        event.put("file", result.getFile() != null ? result.getFile().getName() : null);
+        appendQuietly(event);
+        close();
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to delete session journal " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Every event was already synced
+        }
+        channel = null;
+    }
+
+    /**
+     * Journals in a directory, oldest session first
+     */
+    public static List<File> findJournals(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        List<File> journals = new ArrayList<>();
+        if (files != null) {
+            journals.addAll(List.of(files));
+            journals.sort((a, b) -> a.getName().compareTo(b.getName()));
+        }
+        return journals;
+    }
+
+    /**
+     * Directories that held a journal when it was last looked at
+     */
+    public static synchronized Set<File> knownDirectories() {
+        Set<File> directories = new LinkedHashSet<>();
+        if (!INDEX_FILE.isFile()) {
+            return directories;
+        }
+        try {
+            for (String line : Files.readAllLines(INDEX_FILE.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    directories.add(new File(line));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read journal index: " + e.getMessage());
+        }
+        return directories;
+    }
+
+    /**
+     * Drop the directories that no longer hold a journal from the index
+     */
+    public static synchronized void pruneDirectories() {
+        Set<File> directories = knownDirectories();
+        if (directories.removeIf(directory -> findJournals(directory).isEmpty())) {
+            writeIndex(directories);
+        }
+    }
+
+    private static synchronized void rememberDirectory(File directory) {
+        Set<File> directories = knownDirectories();
+        if (directories.add(directory.getAbsoluteFile())) {
+            writeIndex(directories);
+        }
+    }
+
+    private static void writeIndex(Set<File> directories) {
+        List<String> lines = new ArrayList<>();
+        for (File directory : directories) {
+            lines.add(directory.getPath());
+        }
+        try {
+            Files.write(INDEX_FILE.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Failed to write journal index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read back the events of a journal. A torn last line, written while the power went out,
+     * is ignored.
+     */
+    public static List<Map<String, Object>> read(File journal) throws IOException {
+        List<Map<String, Object>> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(journal.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> event = OBJECT_MAPPER.readValue(line, Map.class);
+                    events.add(event);
+                } catch (IOException e) {
+                    System.err.println("Skipping unreadable line in " + journal.getName());
+                }
+            }
+        }
+        return events;
+    }
+
+    private static Map<String, Object> event(String type) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", type);
+        event.put("time", System.currentTimeMillis());
+        return event;
+    }
+
+    private void appendQuietly(Map<String, Object> event) {
+        try {
+            append(event);
+        } catch (IOException e) {
+            System.err.println("Failed to write session journal " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Append one line and force it to disk before returning
+     */
+    private synchronized void append(Map<String, Object> event) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        byte[] line = (OBJECT_MAPPER.writeValueAsString(event) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+}
@@ -0,0 +1,236 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.screenrecorder.model.RecordingResult;
+
+/**
+ * Finishes recording sessions that were interrupted by a crash or power loss.
+ *
+ * Each {@link SessionJournal} left in an output directory is replayed: the parts or segments
+ * it lists are gathered, a part that FFmpeg never closed is repaired (fragmented MP4 is
+ * rewritten in Java, anything else is remuxed, and left untouched when that fails) and the survivors
+ * are joined with stream copy into the file the session would have produced. Two-stage sessions
+ * keep their capture-quality output; it is not transcoded again.
+ */
+public class SessionRecovery {
+    private final SegmentConcatenator concatenator = new SegmentConcatenator();
+
+    /**
+     * Recover every interrupted session in the given directories and in every directory the
+     * journal index lists, then drop the directories left without journals from the index
+     *
+     * @return one result per interrupted session, empty when there was nothing to do
+     */
+    public List<RecordingResult> recoverEverywhere(File... directories) {
+        Set<File> scanned = new LinkedHashSet<>();
+        for (File directory : directories) {
+            scanned.add(directory.getAbsoluteFile());
+        }
+        scanned.addAll(SessionJournal.knownDirectories());
+        List<RecordingResult> results = new ArrayList<>();
+        for (File directory : scanned) {
+            results.addAll(recoverAll(directory));
+            if (Thread.currentThread().isInterrupted()) {
+                return results;
+            }
+        }
+        SessionJournal.pruneDirectories();
+        return results;
+    }
+
+    /**
+     * Recover every interrupted session in the directory
+     *
+     * @return one result per interrupted session, empty when there was nothing to do
+     */
+    public List<RecordingResult> recoverAll(File directory) {
+        List<RecordingResult> results = new ArrayList<>();
+        if (!directory.isDirectory()) {
+            return results;
+        }
+        for (File journal : SessionJournal.findJournals(directory)) {
+            try {
+                RecordingResult result = recover(journal);
+                if (result != null) {
+                    System.out.println("Recovered session: " + result);
+                    results.add(result);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to recover " + journal.getName() + ": " + e.getMessage());
+                results.add(new RecordingResult(false, null, 0, Duration.ZERO, Duration.ZERO, true,
+                        "Could not recover " + baseName(journal) + ": " + e.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finish the session described by one journal and delete the journal
+     *
+     * @return null when the session had actually ended and nothing needed recovering
+     * @throws IOException when the surviving files could not be joined; the journal is kept
+     */
+    RecordingResult recover(File journal) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        List<Map<String, Object>> events = SessionJournal.read(journal);
+        if (events.isEmpty() || !SessionJournal.START.equals(events.get(0).get("event"))
+                || SessionJournal.STOP.equals(events.get(events.size() - 1).get("event"))) {
+            Files.deleteIfExists(journal.toPath());
+            return null;
+        }
+
+        File directory = journal.getParentFile();
+        Map<?, ?> start = events.get(0);
+        String baseName = start.get("baseName") instanceof String name ? name : baseName(journal);
+        Map<?, ?> config = start.get("config") instanceof Map<?, ?> map ? map : Map.of();
+        String format = config.get("outputFormat") instanceof String value ? value : "mp4";
+        boolean segmented = Boolean.TRUE.equals(config.get("segmentedOutput"));
+        File output = new File(directory, baseName + "." + format);
+
+        List<File> sources = new ArrayList<>();
+        List<File> repaired = new ArrayList<>();
+        List<File> originals = new ArrayList<>();
+        List<String> notes = new ArrayList<>();
+        double durationSeconds = 0;
+
+        if (segmented) {
+            // Only segments FFmpeg reported closed are complete; the one being written is not
+            for (Map<String, Object> event : events) {
+                if (SessionJournal.SEGMENT_CLOSED.equals(event.get("event"))) {
+                    File segment = new File(directory, String.valueOf(event.get("file")));
+                    if (segment.isFile() && segment.length() > 0) {
+                        sources.add(segment);
+                        if (event.get("durationSeconds") instanceof Number duration && duration.doubleValue() > 0) {
+                            durationSeconds += duration.doubleValue();
+                        }
+                    }
+                }
+            }
+        } else {
+            List<File> parts = new ArrayList<>();
+            Set<String> closed = new LinkedHashSet<>();
+            for (Map<String, Object> event : events) {
+                if (SessionJournal.PART_STARTED.equals(event.get("event"))) {
+                    parts.add(new File(directory, String.valueOf(event.get("file"))));
+                } else if (SessionJournal.PART_CLOSED.equals(event.get("event"))) {
+                    closed.add(String.valueOf(event.get("file")));
+                }
+            }
+            for (File part : parts) {
+                if (!part.isFile() || part.length() == 0) {
+                    continue;
+                }
+                if (closed.contains(part.getName())) {
+                    sources.add(part);
+                    continue;
+                }
+                File fixed = repair(part);
+                if (fixed != null) {
+                    sources.add(fixed);
+                    repaired.add(fixed);
+                    originals.add(part);
+                    notes.add("repaired " + part.getName());
+                } else {
+                    // Left in place for manual salvage
+                    notes.add("could not read " + part.getName());
+                }
+            }
+        }
+
+        if (sources.isEmpty()) {
+            Files.deleteIfExists(journal.toPath());
+            if (!segmented && output.isFile() && output.length() > 0) {
+                // The parts were already joined when the session was cut short
+                return new RecordingResult(true, output, output.length(), Duration.ZERO,
+                        Duration.ofNanos(System.nanoTime() - started), true, "Recording " + output.getName() + " was already complete");
+            }
+            return new RecordingResult(false, null, 0, Duration.ZERO,
+                    Duration.ofNanos(System.nanoTime() - started), true, "Nothing recoverable for " + baseName);
+        }
+
+        String message;
+        if (sources.size() == 1 && !segmented) {
+            Files.move(sources.get(0).toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            message = "Recovered " + output.getName();
+        } else {
+            long expectedMicros = (long) (durationSeconds * 1_000_000);
+            concatenator.concat(sources, output, expectedMicros, null);
+            message = "Recovered " + output.getName() + " from " + sources.size() + (segmented ? " segments" : " parts");
+            if (!segmented) {
+                // Segments belong to the recording; parts were only ever intermediate files
+                for (File source : sources) {
+                    Files.deleteIfExists(source.toPath());
+                }
+            }
+        }
+        for (File file : repaired) {
+            Files.deleteIfExists(file.toPath());
+        }
+        for (File original : originals) {
+            Files.deleteIfExists(original.toPath());
+        }
+        Files.deleteIfExists(journal.toPath());
+
+        if (!notes.isEmpty()) {
+            message += " (" + String.join(", ", notes) + ")";
+        }
+        return new RecordingResult(true, output, output.length(), Duration.ofMillis((long) (durationSeconds * 1000)),
+                Duration.ofNanos(System.nanoTime() - started), true, message);
+    }
+
+    /**
+     * Make a part FFmpeg never closed playable
+     *
+     * @return the repaired copy, or null when nothing in it can be salvaged
+     */
+    private File repair(File part) throws InterruptedException {
+        File repaired = new File(part.getParentFile(), part.getName() + ".recovered" + extension(part));
+        try {
+            if (Mp4Defragmenter.isFragmented(part)) {
+                new Mp4Defragmenter().defragment(part, repaired, null);
+            } else {
+                // Streamable containers survive a remux; an MP4 without its index does not
+                List<String> arguments = List.of("-y", "-i", part.getAbsolutePath(), "-map", "0", "-c", "copy",
+                        repaired.getAbsolutePath());
+                FFmpegProcessRunner runner = new FFmpegProcessRunner(arguments);
+                int exitCode = runner.run(0, null);
+                if (exitCode != 0) {
+                    throw new IOException("remux failed (exit " + exitCode + "): " + runner.getErrorOutput());
+                }
+            }
+            return repaired.length() > 0 ? repaired : null;
+        } catch (IOException e) {
+            System.err.println("Cannot repair " + part.getName() + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(repaired.toPath());
+            } catch (IOException ignored) {
+                // Best effort
+            }
+            return null;
+        }
+    }
+
+    private static String baseName(File journal) {
+        String name = journal.getName();
+        return name.substring(0, name.length() - SessionJournal.EXTENSION.length());
+    }
+
+    private static String extension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot == -1 ? "" : name.substring(dot);
+    }
+}
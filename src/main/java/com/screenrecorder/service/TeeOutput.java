@@ -0,0 +1,93 @@
+package com.screenrecorder.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds FFmpeg "tee" muxer arguments so one encode feeds a file and network streams.
+ *
+ * The file keeps the default onfail=abort, so a broken recording still stops the process,
+ * while each network target gets onfail=ignore: a receiver that is down or goes away only
+ * drops that output.
+ */
+public final class TeeOutput {
+
+    private TeeOutput() {
+    }
+
+    /**
+     * Output arguments for the file plus every stream target
+     *
+     * @param file the local recording
+     * @param fileFormat container of the file, e.g. "mp4"
+     * @param streamUrls udp://, srt:// or rtmp:// destinations
+     */
+    public static List<String> arguments(File file, String fileFormat, List<String> streamUrls) {
+        return arguments("0:v", file, fileFormat, List.of(), streamUrls);
+    }
+
+    /**
+     * Output arguments for the file plus every stream target, fed from the given stream
+     *
+     * @param videoStream map specifier, e.g. "0:v" or a filter graph label such as "[v0]"
+     * @param fileOptions muxer options for the file only, as "name=value"
+     */
+    public static List<String> arguments(String videoStream, File file, String fileFormat, List<String> fileOptions,
+                                         List<String> streamUrls) {
+        List<String> arguments = new ArrayList<>();
+        // The tee muxer does not select streams itself
+        arguments.add("-map");
+        arguments.add(videoStream);
+        // Containers such as FLV and MP4 need codec headers up front, not in-band
+        arguments.add("-flags");
+        arguments.add("+global_header");
+        arguments.add("-f");
+        arguments.add("tee");
+        arguments.add(buildSpec(file, fileFormat, fileOptions, streamUrls));
+        return arguments;
+    }
+
+    /**
+     * The "[f=mp4]file|[f=mpegts:onfail=ignore]udp://..." slave list
+     */
+    static String buildSpec(File file, String fileFormat, List<String> fileOptions, List<String> streamUrls) {
+        StringBuilder spec = new StringBuilder();
+        spec.append("[f=").append(fileFormat);
+        for (String option : fileOptions) {
+            spec.append(':').append(option);
+        }
+        spec.append(']').append(escape(file.getAbsolutePath()));
+        for (String url : streamUrls) {
+            spec.append("|[f=").append(formatFor(url)).append(":onfail=ignore]").append(escape(url));
+        }
+        return spec.toString();
+    }
+
+    /**
+     * Container for a stream URL: FLV for RTMP, MPEG-TS for UDP, SRT and anything else
+     */
+    static String formatFor(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("rtmp://") || lower.startsWith("rtmps://")) {
+            return "flv";
+        }
+        return "mpegts";
+    }
+
+    /**
+     * Escape the characters the tee muxer treats specially in a slave name
+     */
+    static String escape(String name) {
+        StringBuilder escaped = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\' || c == '\'' || c == '|' || (c == '[' && i == 0)) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
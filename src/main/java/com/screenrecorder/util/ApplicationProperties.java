@@ -0,0 +1,51 @@
+package com.screenrecorder.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Read-only access to the bundled application.properties defaults
+ */
+public final class ApplicationProperties {
+    private static final String RESOURCE = "/application.properties";
+    private static final Properties PROPERTIES = load();
+
+    private ApplicationProperties() {
+    }
+
+    /**
+     * Get a property value, or the default when it is missing
+     */
+    public static String get(String key, String defaultValue) {
+        return PROPERTIES.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Get an integer property, or the default when it is missing or malformed
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = PROPERTIES.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream in = ApplicationProperties.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load application properties: " + e.getMessage());
+        }
+        return properties;
+    }
+}
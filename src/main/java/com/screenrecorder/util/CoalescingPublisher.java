@@ -0,0 +1,93 @@
+package com.screenrecorder.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * Publishes values from background threads to the JavaFX thread, keeping only the latest one.
+ *
+ * At most one flush is queued on the FX thread at a time and flushes are spaced at least
+ * {@code minIntervalMillis} apart, so the UI cost stays constant no matter how often
+ * {@link #publish(Object)} is called. Values replaced before they reached the UI are counted
+ * as dropped.
+ */
+public class CoalescingPublisher<T> {
+    /** Default cap of 10 UI updates per second */
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ui-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Consumer<T> sink;
+    private final long minIntervalNanos;
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    public CoalescingPublisher(Consumer<T> sink) {
+        this(sink, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param sink applied on the FX thread with the latest value
+     * @param minIntervalMillis minimum time between two flushes
+     */
+    public CoalescingPublisher(Consumer<T> sink, long minIntervalMillis) {
+        this.sink = sink;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.lastFlushNanos = System.nanoTime() - minIntervalNanos;
+    }
+
+    /**
+     * Offer a new value; may be called from any thread
+     */
+    public void publish(T value) {
+        published.incrementAndGet();
+        if (pending.getAndSet(value) != null) {
+            dropped.incrementAndGet();
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            long delay = lastFlushNanos + minIntervalNanos - System.nanoTime();
+            if (delay <= 0) {
+                Platform.runLater(this::flush);
+            } else {
+                SCHEDULER.schedule(() -> Platform.runLater(this::flush), delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        lastFlushNanos = System.nanoTime();
+        flushScheduled.set(false);
+        T value = pending.getAndSet(null);
+        if (value != null) {
+            sink.accept(value);
+        }
+    }
+
+    /**
+     * Number of values offered so far
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * Number of values superseded before they reached the UI
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.screenrecorder.test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.screenrecorder.capture.FrameDiffer;
+
+/**
+ * Per-frame cost of dirty-tile detection at 1080p and 4K.
+ *
+ * "idle" compares identical frames (the whole frame is scanned), "cursor" changes one tile
+ * per frame, "video" changes every pixel (each tile stops at its first row and is copied into
+ * the reference).
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.screenrecorder.test.FrameDifferBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDifferBenchmark {
+
+    @Param({"1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"idle", "cursor", "video"})
+    public String scene;
+
+    @Param({"true", "false"})
+    public boolean bufferMismatch;
+
+    private FrameDiffer differ;
+    private ByteBuffer[] frames;
+    private int frameIndex;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        differ = new FrameDiffer(width, height, 32, bufferMismatch);
+
+        frames = new ByteBuffer[2];
+        for (int f = 0; f < frames.length; f++) {
+            ByteBuffer frame = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < width * height; i++) {
+                int pixel = 0xFF202020;
+                if (scene.equals("video")) {
+                    pixel = 0xFF000000 | (i * 31 + f * 7919);
+                } else if (scene.equals("cursor") && f == 1 && i == (height / 2) * width + width / 2) {
+                    pixel = 0xFFFFFFFF;
+                }
+                frame.putInt(pixel);
+            }
+            frame.flip();
+            frames[f] = frame;
+        }
+        differ.update(frames[0]);
+    }
+
+    @Benchmark
+    public boolean update() {
+        frameIndex ^= 1;
+        return differ.update(frames[frameIndex]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FrameDifferBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
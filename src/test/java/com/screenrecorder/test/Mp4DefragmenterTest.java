@@ -0,0 +1,211 @@
+package com.screenrecorder.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.screenrecorder.service.Mp4Defragmenter;
+
+/**
+ * Simple test for the fragmented-to-regular MP4 rewrite, on a synthetic file with a truncated
+ * last fragment and, when FFmpeg is installed, on a real fragmented recording
+ */
+public class Mp4DefragmenterTest {
+    private static final int FRAME_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Testing MP4 defragmenter...");
+
+        // Test 1: synthetic file - two fragments of 3 samples, then one cut off by a "crash"
+        System.out.println("\n=== Test 1: Synthetic fragmented file ===");
+        File input = Files.createTempFile("fragmented", ".mp4").toFile();
+        File output = Files.createTempFile("defragmented", ".mp4").toFile();
+        input.deleteOnExit();
+        output.deleteOnExit();
+        byte[] fragmented = buildFragmentedFile();
+        // Drop the end of the last mdat
+        Files.write(input.toPath(), java.util.Arrays.copyOf(fragmented, fragmented.length - 50));
+
+        check(Mp4Defragmenter.isFragmented(input), "input is detected as fragmented");
+        new Mp4Defragmenter().defragment(input, output, null);
+        check(!Mp4Defragmenter.isFragmented(output), "output is a regular MP4");
+
+        ByteBuffer result = ByteBuffer.wrap(Files.readAllBytes(output.toPath()));
+        List<String> topLevel = new ArrayList<>();
+        for (int position = 0; position < result.limit(); position += result.getInt(position)) {
+            topLevel.add(type(result, position));
+        }
+        System.out.println("Top-level boxes: " + topLevel);
+        check(topLevel.equals(List.of("ftyp", "moov", "mdat")), "moov is in front of mdat");
+
+        int stsz = find(result, "stsz");
+        int sampleCount = result.getInt(stsz + 16);
+        check(sampleCount == 6, "complete fragments kept, truncated one dropped (" + sampleCount + " samples)");
+        int stss = find(result, "stss");
+        check(stss > 0 && result.getInt(stss + 12) == 2 && result.getInt(stss + 16) == 1 && result.getInt(stss + 20) == 4,
+                "keyframes at samples 1 and 4");
+
+        int stco = find(result, "stco");
+        int chunks = result.getInt(stco + 12);
+        int sample = 0;
+        boolean offsetsMatch = true;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int offset = result.getInt(stco + 16 + chunk * 4);
+            for (int i = 0; i < 3; i++, sample++) {
+                offsetsMatch &= result.get(offset + i * FRAME_SIZE) == (byte) sample;
+            }
+        }
+        check(offsetsMatch, "chunk offsets point at the right sample data");
+        int mvhd = find(result, "mvhd");
+        // 6 samples of 3000 at 30000 per second, in the movie timescale of 1000
+        check(result.getInt(mvhd + 24) == 600, "movie duration covers the kept samples (" + result.getInt(mvhd + 24) + ")");
+
+        // Test 2: real FFmpeg output
+        System.out.println("\n=== Test 2: FFmpeg fragmented recording ===");
+        if (!isFFmpegAvailable()) {
+            System.out.println("FFmpeg not found, skipping");
+            return;
+        }
+        File recording = Files.createTempFile("ffmpeg-fragmented", ".mp4").toFile();
+        File rewritten = Files.createTempFile("ffmpeg-defragmented", ".mp4").toFile();
+        recording.deleteOnExit();
+        rewritten.deleteOnExit();
+        run("ffmpeg", "-hide_banner", "-y", "-f", "lavfi", "-i", "testsrc=size=320x240:rate=30", "-t", "5",
+                "-c:v", "libx264", "-preset", "ultrafast",
+                "-movflags", "+frag_keyframe+empty_moov+default_base_moof", "-frag_duration", "1000000",
+                recording.getAbsolutePath());
+        check(Mp4Defragmenter.isFragmented(recording), "FFmpeg output is fragmented");
+        System.out.println("Rewritten in " + new Mp4Defragmenter().defragment(recording, rewritten, null).toMillis() + " ms");
+        String frames = run("ffprobe", "-v", "error", "-count_packets", "-select_streams", "v:0",
+                "-show_entries", "stream=nb_read_packets", "-of", "csv=p=0", rewritten.getAbsolutePath()).trim();
+        check(frames.equals("150"), "all 150 frames readable after the rewrite (" + frames + ")");
+    }
+
+    /**
+     * ftyp, moov with mvex, then three moof/mdat pairs of three 100-byte samples each
+     */
+    private static byte[] buildFragmentedFile() {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        write(file, box("ftyp", bytes("isom", 0x200, "isomiso6")));
+
+        byte[] mvhd = fullBox("mvhd", ints(0, 0, 1000, 0));
+        byte[] tkhd = fullBox("tkhd", ints(0, 0, 1, 0, 0));
+        byte[] mdhd = fullBox("mdhd", ints(0, 0, 30000, 0));
+        byte[] hdlr = fullBox("hdlr", bytes(0, "vide", 0, 0, 0, 0));
+        byte[] stbl = box("stbl", concat(
+                fullBox("stsd", ints(0)),
+                fullBox("stts", ints(0)), fullBox("stsc", ints(0)),
+                fullBox("stsz", ints(0, 0)), fullBox("stco", ints(0))));
+        byte[] trak = box("trak", concat(tkhd, box("mdia", concat(mdhd, hdlr, box("minf", stbl)))));
+        byte[] trex = fullBox("trex", ints(1, 1, 3000, FRAME_SIZE, 0x10000));
+        write(file, box("moov", concat(mvhd, trak, box("mvex", trex))));
+
+        int sample = 0;
+        for (int fragment = 0; fragment < 3; fragment++) {
+            // tfhd: default-base-is-moof; trun: data offset and first sample flags (keyframe)
+            byte[] tfhd = fullBox("tfhd", 0x20000, ints(1));
+            byte[] tfdt = fullBox("tfdt", ints(fragment * 9000));
+            int trunSize = 12 + 12;
+            byte[] mfhd = fullBox("mfhd", ints(fragment + 1));
+            int moofSize = 8 + mfhd.length + 8 + tfhd.length + tfdt.length + trunSize;
+            byte[] trun = fullBox("trun", 0x1 | 0x4, ints(3, moofSize + 8, 0));
+            write(file, box("moof", concat(mfhd, box("traf", concat(tfhd, tfdt, trun)))));
+
+            byte[] data = new byte[3 * FRAME_SIZE];
+            for (int i = 0; i < 3; i++, sample++) {
+                java.util.Arrays.fill(data, i * FRAME_SIZE, (i + 1) * FRAME_SIZE, (byte) sample);
+            }
+            write(file, box("mdat", data));
+        }
+        return file.toByteArray();
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        return ByteBuffer.allocate(8 + payload.length).putInt(8 + payload.length)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1)).put(payload).array();
+    }
+
+    private static byte[] fullBox(String type, byte[] payload) {
+        return fullBox(type, 0, payload);
+    }
+
+    private static byte[] fullBox(String type, int flags, byte[] payload) {
+        return box(type, concat(ints(flags), payload));
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] bytes(Object... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object value : values) {
+            write(out, value instanceof String text ? text.getBytes(StandardCharsets.ISO_8859_1) : ints((Integer) value));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            write(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] data) {
+        out.write(data, 0, data.length);
+    }
+
+    private static String type(ByteBuffer buffer, int position) {
+        byte[] type = new byte[4];
+        buffer.get(position + 4, type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Position of the first box of this type, found by scanning for its four-character code
+     */
+    private static int find(ByteBuffer buffer, String type) {
+        byte[] code = type.getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 4; i + 4 <= buffer.limit(); i++) {
+            if (buffer.get(i) == code[0] && buffer.get(i + 1) == code[1] && buffer.get(i + 2) == code[2]
+                    && buffer.get(i + 3) == code[3]) {
+                return i - 4;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isFFmpegAvailable() {
+        try {
+            return new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String run(String... command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor(60, TimeUnit.SECONDS);
+        return output;
+    }
+
+    private static void check(boolean condition, String description) {
+        System.out.println((condition ? "PASS: " : "FAIL: ") + description);
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.screenrecorder.test;
+
+import java.io.File;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.screenrecorder.service.TeeOutput;
+
+/**
+ * Simple test for single-encode fan-out: one FFmpeg process writes a file and a UDP stream,
+ * received by a local listener standing in for a streaming server
+ */
+public class TeeOutputTest {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Testing tee output...");
+
+        // Test 1: argument building and escaping
+        System.out.println("\n=== Test 1: Tee specification ===");
+        File file = new File("C:\\Recordings\\it's|here.mp4");
+        List<String> arguments = TeeOutput.arguments(file, "mp4",
+                List.of("udp://127.0.0.1:5000", "rtmp://localhost/live/key"));
+        String spec = arguments.get(arguments.size() - 1);
+        System.out.println("Spec: " + spec);
+        check(spec.contains("[f=mpegts:onfail=ignore]udp://127.0.0.1:5000"), "UDP target uses MPEG-TS and onfail=ignore");
+        check(spec.contains("[f=flv:onfail=ignore]rtmp://localhost/live/key"), "RTMP target uses FLV");
+        check(spec.contains("it\\'s\\|here.mp4"), "quote and separator in the file name are escaped");
+        String primary = primarySlave(spec);
+        System.out.println("Primary: " + primary);
+        check(primary.startsWith("[f=mp4]") && primary.endsWith("it\\'s\\|here.mp4"), "file output is the first slave");
+        check(!primary.contains("onfail"), "file output keeps the default onfail=abort");
+
+        List<String> withOptions = TeeOutput.arguments("[v0]", file, "mp4", List.of("movflags=+faststart"),
+                List.of("srt://127.0.0.1:9000"));
+        String optionsPrimary = primarySlave(withOptions.get(withOptions.size() - 1));
+        check(optionsPrimary.startsWith("[f=mp4:movflags=+faststart]"), "file options apply to the file only");
+        check(!optionsPrimary.contains("onfail"), "file options do not relax onfail=abort");
+        check(withOptions.get(1).equals("[v0]"), "filter graph label is mapped");
+
+        // Test 2: real encode against a local UDP listener
+        System.out.println("\n=== Test 2: File plus UDP stream from one encode ===");
+        if (!isFFmpegAvailable()) {
+            System.out.println("FFmpeg not found, skipping");
+            return;
+        }
+
+        try (DatagramSocket listener = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            listener.setSoTimeout(5000);
+            File output = Files.createTempFile("tee-test", ".mp4").toFile();
+            output.deleteOnExit();
+            String target = "udp://127.0.0.1:" + listener.getLocalPort();
+            // A second target nobody listens on must not break the recording
+            String deadTarget = "rtmp://127.0.0.1:1/live/none";
+
+            List<String> command = new ArrayList<>(List.of("ffmpeg", "-hide_banner", "-y",
+                    "-f", "lavfi", "-i", "testsrc=size=320x240:rate=30", "-t", "3",
+                    "-c:v", "libx264", "-preset", "ultrafast"));
+            command.addAll(TeeOutput.arguments(output, "mp4", List.of(target, deadTarget)));
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+
+            long bytes = 0;
+            int packets = 0;
+            byte[] buffer = new byte[65536];
+            try {
+                while (packets < 50) {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    listener.receive(packet);
+                    bytes += packet.getLength();
+                    packets++;
+                }
+            } catch (SocketTimeoutException e) {
+                // Stream ended
+            }
+            boolean exited = process.waitFor(30, TimeUnit.SECONDS);
+
+            System.out.println("Received " + packets + " UDP packets (" + bytes + " bytes)");
+            check(packets > 0, "UDP listener received the stream");
+            check(exited && process.exitValue() == 0, "FFmpeg exited cleanly despite the dead RTMP target");
+            check(output.length() > 0, "file output was written (" + output.length() + " bytes)");
+        }
+    }
+
+    /**
+     * The first slave of a tee spec, up to the first unescaped separator
+     */
+    private static String primarySlave(String spec) {
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return spec.substring(0, i);
+            }
+        }
+        return spec;
+    }
+
+    private static boolean isFFmpegAvailable() {
+        try {
+            return new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        System.out.println((condition ? "PASS: " : "FAIL: ") + description);
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}